@@ -0,0 +1,110 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.melnikov.digitalLibrary.config.MySpringMvcServletInitializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.SpringServletContainerInitializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same page of 20 books as rendered HTML ({@code /books}) and as JSON ({@code /api/books}): with all fields,
+ * projected to {@code fields=title}, and gzip-encoded. Requests go through an embedded Tomcat running the whole
+ * application, as in {@link RequestThreadingBenchmark}, and each benchmark returns the body size so the
+ * bytes on the wire can be compared next to the throughput.
+ * <p>
+ * Conditional GETs are not sent, so every request queries and renders. The catalog snapshot is off,
+ * so both sides read the database. Run from the project root so src/main/webapp is found.
+ *
+ * @author Nikolay Melnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ApiThroughputBenchmark {
+
+    private BenchmarkDatabase database;
+    private Tomcat tomcat;
+    private HttpClient client;
+    private String baseUrl;
+
+    @State(Scope.Thread)
+    public static class Ids {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int after() {
+            return random.nextInt(BenchmarkDatabase.BOOKS - 20);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, LifecycleException {
+        database = BenchmarkDatabase.start();
+        System.setProperty("url", database.jdbcUrl());
+        System.setProperty("pool.max_size", Integer.getInteger("bench.pool", 10).toString());
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat").toString());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", new File("src/main/webapp").getAbsolutePath());
+        context.addServletContainerInitializer(new SpringServletContainerInitializer(),
+                Set.of(MySpringMvcServletInitializer.class));
+        tomcat.start();
+
+        baseUrl = "http://localhost:" + tomcat.getConnector().getLocalPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+        database.close();
+    }
+
+    private int get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(path + " returned " + response.statusCode());
+        }
+        return response.body().length;
+    }
+
+    @Benchmark
+    public int html(Ids ids) throws IOException, InterruptedException {
+        return get("/books?after=" + ids.after(), null);
+    }
+
+    @Benchmark
+    public int json(Ids ids) throws IOException, InterruptedException {
+        return get("/api/books?after=" + ids.after(), null);
+    }
+
+    @Benchmark
+    public int jsonProjected(Ids ids) throws IOException, InterruptedException {
+        return get("/api/books?fields=title&after=" + ids.after(), null);
+    }
+
+    @Benchmark
+    public int jsonGzip(Ids ids) throws IOException, InterruptedException {
+        return get("/api/books?after=" + ids.after(), "gzip");
+    }
+}
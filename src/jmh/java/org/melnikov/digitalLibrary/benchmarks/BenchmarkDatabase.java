@@ -0,0 +1,111 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.melnikov.digitalLibrary.cache.EntityCache;
+import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.melnikov.digitalLibrary.repositories.CatalogSnapshot;
+import org.melnikov.digitalLibrary.repositories.PersonNameFilter;
+import org.melnikov.digitalLibrary.repositories.PersonRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Embedded PostgreSQL migrated with the application's Flyway scripts and seeded with
+ * {@code bench.books} books (default 100 000) and {@code bench.people} people (default 10 000),
+ * a third of the books being on loan.
+ *
+ * @author Nikolay Melnikov
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    static final int BOOKS = Integer.getInteger("bench.books", 100_000);
+    static final int PEOPLE = Integer.getInteger("bench.people", 10_000);
+
+    private static final String WORDS = "ARRAY['war','peace','river','night','garden','stone','winter','letters'," +
+            "'city','silence','empire','island','mirror','road','storm','house','sea','fire','glass','dream']";
+
+    private final EmbeddedPostgres postgres;
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceTransactionManager transactionManager;
+
+    private BenchmarkDatabase(EmbeddedPostgres postgres) {
+        this.postgres = postgres;
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+        config.setMaximumPoolSize(Integer.getInteger("bench.pool", 10));
+        this.dataSource = new HikariDataSource(config);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    static BenchmarkDatabase start() throws IOException {
+        BenchmarkDatabase database = new BenchmarkDatabase(EmbeddedPostgres.builder().start());
+        Flyway.configure()
+                .dataSource(database.dataSource)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+        database.seed();
+        return database;
+    }
+
+    private void seed() {
+        jdbcTemplate.update("INSERT INTO person (full_name, year_of_birth) " +
+                "SELECT 'Patron ' || lpad(g::text, 7, '0'), 1930 + g % 80 " +
+                "FROM generate_series(1, ?) g", PEOPLE);
+        jdbcTemplate.update("INSERT INTO book (title, author, year_of_publication, person_id) " +
+                "SELECT initcap((" + WORDS + ")[1 + g % 20] || ' ' || (" + WORDS + ")[1 + (g / 20) % 20]) || ' ' || g, " +
+                "'Author ' || (g % 5000), 1800 + g % 223, " +
+                "CASE WHEN g % 3 = 0 THEN 1 + g % ? END " +
+                "FROM generate_series(1, ?) g", PEOPLE, BOOKS);
+        jdbcTemplate.execute("VACUUM ANALYZE");
+    }
+
+    JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    DataSourceTransactionManager transactionManager() {
+        return transactionManager;
+    }
+
+    String jdbcUrl() {
+        return postgres.getJdbcUrl("postgres", "postgres");
+    }
+
+    /**
+     * @param entityCache whether findById lookups may be served from an entity cache; without it every call hits
+     *                    the database
+     */
+    BooksRepository booksRepository(boolean entityCache) {
+        return new BooksRepository(jdbcTemplate, jdbcTemplate, transactionManager, cache(entityCache),
+                cache(entityCache), new CatalogSnapshot(jdbcTemplate, false, 0));
+    }
+
+    /**
+     * @param entityCache as for {@link #booksRepository}
+     * @param nameFilter  whether name lookups first consult a loaded {@link PersonNameFilter}
+     */
+    PersonRepository personRepository(boolean entityCache, boolean nameFilter) {
+        PersonNameFilter filter = new PersonNameFilter(jdbcTemplate, nameFilter, 0.01);
+        filter.reload();
+        return new PersonRepository(jdbcTemplate, jdbcTemplate, transactionManager, cache(entityCache), filter);
+    }
+
+    private static <V> EntityCache<V> cache(boolean enabled) {
+        return new EntityCache<>(enabled ? 100_000 : 0, Duration.ofMinutes(10));
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataSource.close();
+        postgres.close();
+    }
+}
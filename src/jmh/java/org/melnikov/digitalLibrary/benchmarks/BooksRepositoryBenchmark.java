@@ -0,0 +1,229 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.models.BookDetails;
+import org.melnikov.digitalLibrary.models.Person;
+import org.melnikov.digitalLibrary.repositories.BookSort;
+import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.melnikov.digitalLibrary.repositories.CheckoutOutcome;
+import org.melnikov.digitalLibrary.repositories.KeysetPage;
+import org.melnikov.digitalLibrary.repositories.Projection;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link BooksRepository} method against a seeded embedded database, except {@code deleteAll()}, which would
+ * empty it. Writes undo themselves, so the data stays the same from one invocation to the next.
+ *
+ * @author Nikolay Melnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BooksRepositoryBenchmark {
+
+    private static final int BULK = 100;
+
+    @Param({"false", "true"})
+    public boolean entityCache;
+
+    private static final Projection TITLE_ONLY = Projection.BOOK.select("title");
+
+    private BenchmarkDatabase database;
+    private BooksRepository booksRepository;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.start();
+        booksRepository = database.booksRepository(entityCache);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    private int randomBookId() {
+        return 1 + random.nextInt(BenchmarkDatabase.BOOKS);
+    }
+
+    private int randomPersonId() {
+        return 1 + random.nextInt(BenchmarkDatabase.PEOPLE);
+    }
+
+    private List<Integer> randomBookIds(int count) {
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(randomBookId());
+        }
+        return ids;
+    }
+
+    private static Book newBook(int n) {
+        Book book = new Book();
+        book.setTitle("Benchmark title " + n);
+        book.setAuthor("Benchmark author");
+        book.setYearOfPublication(2023);
+        return book;
+    }
+
+    @Benchmark
+    public Optional<Book> findById() {
+        return booksRepository.findById(randomBookId());
+    }
+
+    @Benchmark
+    public Optional<BookDetails> findDetailsById() {
+        return booksRepository.findDetailsById(randomBookId());
+    }
+
+    @Benchmark
+    public List<Book> findAllById() {
+        return booksRepository.findAllById(randomBookIds(BULK));
+    }
+
+    @Benchmark
+    public Optional<Map<String, Object>> findByIdProjected() {
+        return booksRepository.findById(randomBookId(), TITLE_ONLY);
+    }
+
+    @Benchmark
+    public boolean existsById() {
+        return booksRepository.existsById(randomBookId());
+    }
+
+    @Benchmark
+    public Optional<Person> getOwner() {
+        return booksRepository.getOwner(randomBookId());
+    }
+
+    @Benchmark
+    public KeysetPage<Book> findFirstPage() {
+        return booksRepository.findPage(null, null, KeysetPage.DEFAULT_SIZE, BookSort.ID);
+    }
+
+    @Benchmark
+    public KeysetPage<Book> findPageAfter() {
+        return booksRepository.findPage(randomBookId(), null, KeysetPage.DEFAULT_SIZE, BookSort.ID);
+    }
+
+    @Benchmark
+    public KeysetPage<Map<String, Object>> findPageAfterProjected() {
+        return booksRepository.findPage(randomBookId(), null, KeysetPage.DEFAULT_SIZE, BookSort.ID, TITLE_ONLY);
+    }
+
+    @Benchmark
+    public KeysetPage<Book> findPageByTitleAfter() {
+        return booksRepository.findPage(randomBookId(), null, KeysetPage.DEFAULT_SIZE, BookSort.TITLE);
+    }
+
+    @Benchmark
+    public KeysetPage<Book> findPageByAuthorBefore() {
+        return booksRepository.findPage(null, randomBookId(), KeysetPage.DEFAULT_SIZE, BookSort.AUTHOR);
+    }
+
+    @Benchmark
+    public List<Book> search() {
+        return booksRepository.search("river winter", 0, KeysetPage.DEFAULT_SIZE + 1);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Book> findAll() {
+        return booksRepository.findAll();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long count() {
+        return booksRepository.count();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void streamWithOwners(Blackhole blackhole) {
+        booksRepository.streamWithOwners(1000, rs -> blackhole.consume(rs.getInt(1)));
+    }
+
+    /**
+     * Reads the book, updates it and writes the row it read back, so the titles {@code search} and the title
+     * pages read stay as seeded.
+     */
+    @Benchmark
+    public void update() {
+        int id = randomBookId();
+        Book original = booksRepository.findById(id).orElseThrow();
+        Book book = new Book();
+        book.setTitle("Updated title " + id);
+        book.setAuthor(original.getAuthor());
+        book.setYearOfPublication(2000);
+        booksRepository.update(id, book);
+        booksRepository.update(id, original);
+    }
+
+    @Benchmark
+    public void checkoutAndReturn(Blackhole blackhole) {
+        int id = randomBookId();
+        int personId = randomPersonId();
+        // only a loan made here is returned: a seeded one held by the same patron stays lent
+        if (booksRepository.checkout(id, personId) == CheckoutOutcome.CHECKED_OUT) {
+            blackhole.consume(booksRepository.returnBook(id, personId));
+        }
+    }
+
+    @Benchmark
+    public void checkoutAllAndReturn(Blackhole blackhole) {
+        List<Integer> ids = new ArrayList<>(20);
+        for (int i = 0; i < 20; i++) {
+            ids.add(randomBookId());
+        }
+        int personId = randomPersonId();
+        booksRepository.checkoutAll(ids, personId).forEach((id, outcome) -> {
+            if (outcome == CheckoutOutcome.CHECKED_OUT) {
+                blackhole.consume(booksRepository.returnBook(id, personId));
+            }
+        });
+    }
+
+    @Benchmark
+    public void saveAndDelete() {
+        Book book = newBook(0);
+        booksRepository.save(book);
+        booksRepository.delete(book);
+    }
+
+    @Benchmark
+    public void saveAndDeleteById() {
+        Book book = booksRepository.save(newBook(0));
+        booksRepository.deleteById(book.getId());
+    }
+
+    @Benchmark
+    public void saveAllAndDeleteAllById() {
+        List<Book> books = new ArrayList<>(BULK);
+        for (int i = 0; i < BULK; i++) {
+            books.add(newBook(i));
+        }
+        booksRepository.deleteAllById(booksRepository.saveAll(books).stream().map(Book::getId).toList());
+    }
+
+    @Benchmark
+    public void saveAllAndDeleteAll() {
+        List<Book> books = new ArrayList<>(BULK);
+        for (int i = 0; i < BULK; i++) {
+            books.add(newBook(i));
+        }
+        booksRepository.deleteAll(booksRepository.saveAll(books));
+    }
+}
@@ -0,0 +1,58 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.repositories.BookSort;
+import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.melnikov.digitalLibrary.repositories.CatalogSnapshot;
+import org.melnikov.digitalLibrary.repositories.KeysetPage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@code /books} page from the in-memory {@link CatalogSnapshot} against {@link BooksRepository#findPage},
+ * for each sort order, starting after a random cursor.
+ *
+ * @author Nikolay Melnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CatalogSnapshotBenchmark {
+
+    @Param({"ID", "TITLE", "AUTHOR"})
+    public BookSort sort;
+
+    private BenchmarkDatabase database;
+    private BooksRepository booksRepository;
+    private CatalogSnapshot catalogSnapshot;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.start();
+        booksRepository = database.booksRepository(false);
+        catalogSnapshot = new CatalogSnapshot(database.jdbcTemplate(), true, BenchmarkDatabase.BOOKS);
+        catalogSnapshot.reload();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public KeysetPage<Book> database() {
+        return booksRepository.findPage(1 + random.nextInt(BenchmarkDatabase.BOOKS), null, KeysetPage.DEFAULT_SIZE, sort);
+    }
+
+    @Benchmark
+    public KeysetPage<Book> snapshot() {
+        return catalogSnapshot.findPage(1 + random.nextInt(BenchmarkDatabase.BOOKS), null, KeysetPage.DEFAULT_SIZE, sort)
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,89 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.melnikov.digitalLibrary.mappers.BookMapper;
+import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-id reads and deletes: one {@code = ANY (?)} statement per chunk ({@link BooksRepository#findAllById},
+ * {@link BooksRepository#deleteAllById}) against one statement per id, batched through {@code batchUpdate}
+ * for deletes. Deletes run in a transaction that is rolled back, so every invocation sees the same data.
+ *
+ * @author Nikolay Melnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IdSetBenchmark {
+
+    @Param({"10", "1000", "20000"})
+    public int ids;
+
+    private BenchmarkDatabase database;
+    private BooksRepository booksRepository;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate rolledBack;
+    private List<Integer> idSet;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.start();
+        booksRepository = database.booksRepository(false);
+        jdbcTemplate = database.jdbcTemplate();
+        rolledBack = new TransactionTemplate(database.transactionManager());
+
+        SplittableRandom random = new SplittableRandom(ids);
+        idSet = new ArrayList<>(ids);
+        for (int i = 0; i < ids; i++) {
+            idSet.add(1 + random.nextInt(BenchmarkDatabase.BOOKS));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Book> findAllByIdArray() {
+        return booksRepository.findAllById(idSet);
+    }
+
+    @Benchmark
+    public List<Book> findAllByIdPerRow() {
+        List<Book> books = new ArrayList<>(idSet.size());
+        for (Integer id : idSet) {
+            books.addAll(jdbcTemplate.query("SELECT id, title, author, year_of_publication, person_id " +
+                    "FROM book WHERE id = ?", new BookMapper(), id));
+        }
+        return books;
+    }
+
+    @Benchmark
+    public void deleteAllByIdArray() {
+        rolledBack.executeWithoutResult(status -> {
+            booksRepository.deleteAllById(idSet);
+            status.setRollbackOnly();
+        });
+    }
+
+    @Benchmark
+    public int[][] deleteAllByIdBatch() {
+        return rolledBack.execute(status -> {
+            status.setRollbackOnly();
+            return jdbcTemplate.batchUpdate("DELETE FROM book WHERE id = ?", idSet, 1000,
+                    (ps, id) -> ps.setInt(1, id));
+        });
+    }
+}
@@ -0,0 +1,383 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.melnikov.digitalLibrary.server.EmbeddedServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the whole application: starts it in {@link EmbeddedServer} against a {@link BenchmarkDatabase}
+ * (seeded with {@code bench.books} books and {@code bench.people} people) and sends a mix of requests at a fixed
+ * rate for a fixed time, then prints throughput and latency percentiles per endpoint.
+ * <pre>
+ *     mvn -Pbenchmarks test-compile exec:exec@load-test -Dload.args="-Dload.rate=500 -Dload.duration_s=120"
+ * </pre>
+ * Arrivals follow an open model: requests start on schedule, each on its own virtual thread, whether or not
+ * earlier ones have finished. Latency is measured from the scheduled start rather than the actual send, so a
+ * stalled server shows up in the percentiles instead of slowing the load down (no coordinated omission).
+ * <p>
+ * Errors are transport failures and 4xx/5xx answers. Requests the application answered but refused, an assign
+ * of a book that is lent, a release of one that is not, a new person that failed validation, are counted as
+ * rejected instead. Releases end loans that earlier assigns actually made, or else loans of the seed data.
+ * <p>
+ * Options, as system properties:
+ * <ul>
+ *     <li>{@code load.rate} requests per second (200) and {@code load.arrivals}, {@code poisson} or {@code uniform}</li>
+ *     <li>{@code load.warmup_s} (10) and {@code load.duration_s} (60); warm-up requests are not reported</li>
+ *     <li>{@code load.mix}, weights per endpoint ({@code list=40,show=40,assign=8,release=8,create=4})</li>
+ *     <li>{@code load.max_in_flight} (2000): arrivals beyond it are dropped and counted, not queued</li>
+ *     <li>{@code load.timeout_ms} (10000) per request; {@code load.report_s} (10) between progress lines</li>
+ * </ul>
+ * {@code server.*} and the application's other properties can be set the same way. Run from the project root
+ * so src/main/webapp is found.
+ *
+ * @author Nikolay Melnikov
+ */
+public final class LoadTest {
+
+    enum Endpoint {
+        LIST("list", "GET /books"),
+        SHOW("show", "GET /books/{id}"),
+        ASSIGN("assign", "PATCH /books/{id}/assign"),
+        RELEASE("release", "PATCH /books/{id}/release"),
+        CREATE("create", "POST /people");
+
+        final String key;
+        final String label;
+
+        Endpoint(String key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+    }
+
+    private record Loan(int bookId, int personId) {
+    }
+
+    /**
+     * A request, and for assign and release the loan it makes or ends.
+     */
+    private record Attempt(HttpRequest request, Loan loan) {
+    }
+
+    private enum Result {
+        DONE, REJECTED, ERROR
+    }
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final Duration timeout;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Map<Endpoint, Stats> warmup = stats();
+    private final Map<Endpoint, Stats> measured = stats();
+    private final Queue<Loan> loans = new ConcurrentLinkedQueue<>();
+    private final AtomicLong people = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private LoadTest(String baseUrl, Duration timeout, int maxInFlight) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.timeout = timeout;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public static void main(String[] args) throws Exception {
+        double rate = Double.parseDouble(System.getProperty("load.rate", "200"));
+        boolean poisson = !"uniform".equals(System.getProperty("load.arrivals", "poisson"));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.warmup_s", 10));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.duration_s", 60));
+        long reportNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.report_s", 10));
+        Endpoint[] mix = mix(System.getProperty("load.mix", "list=40,show=40,assign=8,release=8,create=4"));
+
+        System.out.printf("Seeding %d books and %d people%n", BenchmarkDatabase.BOOKS, BenchmarkDatabase.PEOPLE);
+        try (BenchmarkDatabase database = BenchmarkDatabase.start()) {
+            System.setProperty("url", database.jdbcUrl());
+            System.setProperty("pool.max_size", Integer.getInteger("bench.pool", 10).toString());
+            System.setProperty("server.port", "0");
+            System.setProperty("server.webapp_dir", System.getProperty("server.webapp_dir", "src/main/webapp"));
+            EmbeddedServer server = EmbeddedServer.start(EmbeddedServer.settings());
+            try {
+                LoadTest test = new LoadTest("http://localhost:" + server.port(),
+                        Duration.ofMillis(Long.getLong("load.timeout_ms", 10_000)),
+                        Integer.getInteger("load.max_in_flight", 2000));
+                System.out.printf("Sending %.0f requests/s (%s) for %d s after %d s of warm-up%n", rate,
+                        poisson ? "poisson" : "uniform", TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+                        TimeUnit.NANOSECONDS.toSeconds(warmupNanos));
+                test.run(rate, poisson, mix, warmupNanos, durationNanos, reportNanos);
+            } finally {
+                server.shutdown();
+            }
+        }
+        System.exit(0);
+    }
+
+    private void run(double rate, boolean poisson, Endpoint[] mix, long warmupNanos, long durationNanos,
+                     long reportNanos) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom();
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        long nextReport = start + reportNanos;
+
+        long intended = start;
+        while (intended < end) {
+            long now = System.nanoTime();
+            if (now < intended) {
+                LockSupport.parkNanos(intended - now);
+                continue;
+            }
+            if (now >= nextReport) {
+                report(TimeUnit.NANOSECONDS.toSeconds(now - start), nextReport <= measureFrom ? warmup : measured);
+                nextReport += reportNanos;
+            }
+            Map<Endpoint, Stats> phase = intended < measureFrom ? warmup : measured;
+            Endpoint endpoint = mix[random.nextInt(mix.length)];
+            Stats endpointStats = phase.get(endpoint);
+            long scheduled = intended;
+            if (inFlight.tryAcquire()) {
+                SplittableRandom split = random.split();
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        call(endpoint, endpointStats, scheduled, split);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } else {
+                endpointStats.dropped.increment();
+            }
+            intended += poisson
+                    ? (long) (-Math.log(1 - random.nextDouble()) * meanIntervalNanos)
+                    : (long) meanIntervalNanos;
+        }
+
+        // let the last arrivals finish, each is bounded by the request timeout
+        if (!inFlight.tryAcquire(maxInFlight, timeout.toMillis() + 1000, TimeUnit.MILLISECONDS)) {
+            System.out.printf("%d requests still in flight, not waiting for them%n", maxInFlight - inFlight.availablePermits());
+        }
+        summary(durationNanos / 1e9);
+    }
+
+    private void call(Endpoint endpoint, Stats endpointStats, long scheduled, SplittableRandom random) {
+        Attempt attempt = attempt(endpoint, random);
+        Result result;
+        try {
+            result = result(endpoint, client.send(attempt.request(), HttpResponse.BodyHandlers.discarding()));
+        } catch (IOException e) {
+            result = Result.ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        endpointStats.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled));
+        switch (result) {
+            case DONE -> {
+                if (endpoint == Endpoint.ASSIGN) {
+                    loans.add(attempt.loan());
+                }
+            }
+            case REJECTED -> endpointStats.rejected.increment();
+            case ERROR -> endpointStats.errors.increment();
+        }
+    }
+
+    private Attempt attempt(Endpoint endpoint, SplittableRandom random) {
+        return switch (endpoint) {
+            case LIST -> new Attempt(get("/books?after=" + random.nextInt(BenchmarkDatabase.BOOKS)), null);
+            case SHOW -> new Attempt(get("/books/" + (1 + random.nextInt(BenchmarkDatabase.BOOKS))), null);
+            case ASSIGN -> {
+                // seeded books with an id divisible by three are on loan already: draw among the others,
+                // two in every three ids
+                int free = random.nextInt(BenchmarkDatabase.BOOKS - BenchmarkDatabase.BOOKS / 3);
+                int bookId = 3 * (free / 2) + 1 + free % 2;
+                Loan loan = new Loan(bookId, 1 + random.nextInt(BenchmarkDatabase.PEOPLE));
+                yield new Attempt(form("/books/" + bookId + "/assign", "_method=PATCH&id=" + loan.personId()), loan);
+            }
+            case RELEASE -> {
+                Loan loan = loans.poll();
+                if (loan == null) {
+                    int bookId = 3 * (1 + random.nextInt(BenchmarkDatabase.BOOKS / 3));
+                    loan = new Loan(bookId, 1 + bookId % BenchmarkDatabase.PEOPLE);
+                }
+                yield new Attempt(form("/books/" + loan.bookId() + "/release",
+                        "_method=PATCH&personId=" + loan.personId()), loan);
+            }
+            case CREATE -> new Attempt(form("/people", "fullName=" + URLEncoder.encode(
+                    "Load " + runId + " " + people.incrementAndGet(), StandardCharsets.UTF_8)
+                    + "&yearOfBirth=" + (1940 + random.nextInt(70))), null);
+        };
+    }
+
+    /**
+     * Redirects are not followed: the form endpoints redirect when they are done, assign and release naming
+     * their outcome in the {@code Location} query, while a new person that failed validation gets the form
+     * back with a 200.
+     */
+    private static Result result(Endpoint endpoint, HttpResponse<?> response) {
+        if (response.statusCode() >= 400) {
+            return Result.ERROR;
+        }
+        return switch (endpoint) {
+            case LIST, SHOW -> Result.DONE;
+            case ASSIGN -> outcome(response, "checkout", "CHECKED_OUT");
+            case RELEASE -> outcome(response, "returned", "RETURNED");
+            case CREATE -> response.statusCode() / 100 == 3 ? Result.DONE : Result.REJECTED;
+        };
+    }
+
+    private static Result outcome(HttpResponse<?> response, String parameter, String success) {
+        String query = response.headers().firstValue("Location").map(location -> URI.create(location).getRawQuery())
+                .orElse(null);
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                if (pair.startsWith(parameter + "=")) {
+                    return pair.substring(parameter.length() + 1).equals(success) ? Result.DONE : Result.REJECTED;
+                }
+            }
+        }
+        return Result.ERROR;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(timeout).GET().build();
+    }
+
+    private HttpRequest form(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(timeout)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    /**
+     * One progress line with the requests of {@code phase} completed since the last one.
+     */
+    private void report(long elapsedSeconds, Map<Endpoint, Stats> phase) {
+        Histogram interval = new Histogram(3);
+        for (Stats endpointStats : phase.values()) {
+            interval.add(endpointStats.interval());
+        }
+        System.out.printf("%4d s %-9s %8d requests  p50 %8.2f ms  p99 %8.2f ms  in flight %d%n", elapsedSeconds,
+                phase == warmup ? "(warm-up)" : "", interval.getTotalCount(), millis(interval, 50), millis(interval, 99),
+                maxInFlight - inFlight.availablePermits());
+    }
+
+    private void summary(double seconds) {
+        System.out.println();
+        System.out.printf("%-26s %9s %9s %8s %7s %7s %9s %9s %9s %9s%n", "endpoint", "requests", "req/s",
+                "rejected", "errors", "dropped", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        Histogram all = new Histogram(3);
+        long rejected = 0;
+        long errors = 0;
+        long dropped = 0;
+        for (Map.Entry<Endpoint, Stats> entry : measured.entrySet()) {
+            Stats endpointStats = entry.getValue();
+            endpointStats.interval();
+            all.add(endpointStats.total);
+            rejected += endpointStats.rejected.sum();
+            errors += endpointStats.errors.sum();
+            dropped += endpointStats.dropped.sum();
+            line(entry.getKey().label, endpointStats.total, endpointStats.rejected.sum(), endpointStats.errors.sum(),
+                    endpointStats.dropped.sum(), seconds);
+        }
+        line("all", all, rejected, errors, dropped, seconds);
+    }
+
+    private static void line(String label, Histogram histogram, long rejected, long errors, long dropped,
+                             double seconds) {
+        System.out.printf("%-26s %9d %9.1f %8d %7d %7d %9.2f %9.2f %9.2f %9.2f%n", label, histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds, rejected, errors, dropped, millis(histogram, 50),
+                millis(histogram, 99), millis(histogram, 99.9),
+                histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue() / 1000.0);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * One slot per unit of weight, so drawing a uniform index follows the weights.
+     */
+    private static Endpoint[] mix(String weights) {
+        List<Endpoint> slots = new ArrayList<>();
+        for (String entry : weights.split(",")) {
+            String[] keyAndWeight = entry.trim().split("=");
+            Endpoint endpoint = null;
+            for (Endpoint candidate : Endpoint.values()) {
+                if (candidate.key.equals(keyAndWeight[0].trim().toLowerCase(Locale.ROOT))) {
+                    endpoint = candidate;
+                }
+            }
+            if (endpoint == null || keyAndWeight.length != 2) {
+                throw new IllegalArgumentException("load.mix entries are endpoint=weight with endpoint one of " +
+                        "list, show, assign, release, create; got '" + entry + "'");
+            }
+            for (int i = Integer.parseInt(keyAndWeight[1].trim()); i > 0; i--) {
+                slots.add(endpoint);
+            }
+        }
+        if (slots.isEmpty()) {
+            throw new IllegalArgumentException("load.mix has no positive weight");
+        }
+        return slots.toArray(Endpoint[]::new);
+    }
+
+    private static Map<Endpoint, Stats> stats() {
+        Map<Endpoint, Stats> stats = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            stats.put(endpoint, new Stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Latencies in microseconds of one endpoint in one phase, recorded concurrently and collected interval
+     * by interval into {@code total}; a request counts in the phase it was scheduled in.
+     */
+    private static final class Stats {
+
+        private final Recorder latency = new Recorder(3);
+        private final Histogram total = new Histogram(3);
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private Histogram interval;
+
+        /**
+         * The latencies recorded since the last call, also added to {@code total}.
+         */
+        Histogram interval() {
+            interval = latency.getIntervalHistogram(interval);
+            total.add(interval);
+            return interval;
+        }
+    }
+}
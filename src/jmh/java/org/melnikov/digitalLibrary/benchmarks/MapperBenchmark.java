@@ -0,0 +1,87 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.melnikov.digitalLibrary.mappers.BookDetailsMapper;
+import org.melnikov.digitalLibrary.mappers.BookMapper;
+import org.melnikov.digitalLibrary.mappers.PersonMapper;
+import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.models.BookDetails;
+import org.melnikov.digitalLibrary.models.Person;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row mapping cost in isolation, over an in-memory {@link ResultSet} positioned on one row.
+ *
+ * @author Nikolay Melnikov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MapperBenchmark {
+
+    private final BookMapper bookMapper = new BookMapper();
+    private final PersonMapper personMapper = new PersonMapper();
+    private final BookDetailsMapper bookDetailsMapper = new BookDetailsMapper();
+
+    private ResultSet bookRow;
+    private ResultSet personRow;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> book = new HashMap<>();
+        book.put("id", 4242);
+        book.put("title", "Winter River 4242");
+        book.put("author", "Author 4242");
+        book.put("year_of_publication", 1987);
+        book.put("person_id", 17);
+        book.put("full_name", "Patron 0000017");
+        book.put("year_of_birth", 1964);
+        bookRow = row(book);
+
+        Map<String, Object> person = new HashMap<>();
+        person.put("id", 17);
+        person.put("full_name", "Patron 0000017");
+        person.put("year_of_birth", 1964);
+        personRow = row(person);
+    }
+
+    @Benchmark
+    public Book bookMapper() throws SQLException {
+        return bookMapper.mapRow(bookRow, 0);
+    }
+
+    @Benchmark
+    public Person personMapper() throws SQLException {
+        return personMapper.mapRow(personRow, 0);
+    }
+
+    @Benchmark
+    public BookDetails bookDetailsMapper() throws SQLException {
+        return bookDetailsMapper.mapRow(bookRow, 0);
+    }
+
+    /**
+     * A read-only ResultSet over one row; supports the getters the mappers use.
+     */
+    private static ResultSet row(Map<String, Object> values) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    Object value = args != null && args.length > 0 ? values.get((String) args[0]) : null;
+                    return switch (method.getName()) {
+                        case "getInt" -> value == null ? 0 : (Integer) value;
+                        case "getString" -> value == null ? null : value.toString();
+                        case "getObject" -> value;
+                        case "wasNull" -> false;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    };
+                });
+    }
+}
@@ -0,0 +1,195 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.models.Person;
+import org.melnikov.digitalLibrary.repositories.KeysetPage;
+import org.melnikov.digitalLibrary.repositories.PersonRepository;
+import org.melnikov.digitalLibrary.repositories.Projection;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link PersonRepository} method against a seeded embedded database, except {@code deleteAll()}, which would
+ * empty it. Writes undo themselves, so the data stays the same from one invocation to the next. The entity cache
+ * only serves {@code findById}, the name filter only {@code findByName}/{@code existsByName} and the inserts that
+ * feed it, so each can be measured on its own.
+ *
+ * @author Nikolay Melnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PersonRepositoryBenchmark {
+
+    private static final int BULK = 100;
+    private static final Projection NAME_ONLY = Projection.PERSON.select("fullName");
+
+    @Param({"false", "true"})
+    public boolean entityCache;
+
+    @Param({"false", "true"})
+    public boolean nameFilter;
+
+    private BenchmarkDatabase database;
+    private PersonRepository personRepository;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.start();
+        personRepository = database.personRepository(entityCache, nameFilter);
+        // seeded loans have no due date: make about half of them overdue, as the scanner would have reported them
+        database.jdbcTemplate().update("UPDATE book SET due_at = now() + make_interval(days => 14 - id % 30) " +
+                "WHERE person_id IS NOT NULL");
+        database.jdbcTemplate().update("UPDATE overdue_scan SET scanned_until = now()");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    private int randomPersonId() {
+        return 1 + random.nextInt(BenchmarkDatabase.PEOPLE);
+    }
+
+    private static String name(int id) {
+        return String.format("Patron %07d", id);
+    }
+
+    private Person newPerson() {
+        Person person = new Person();
+        person.setFullName("Benchmark patron " + random.nextLong());
+        person.setYearOfBirth(1990);
+        return person;
+    }
+
+    @Benchmark
+    public Optional<Person> findById() {
+        return personRepository.findById(randomPersonId());
+    }
+
+    @Benchmark
+    public List<Person> findAllById() {
+        List<Integer> ids = new ArrayList<>(BULK);
+        for (int i = 0; i < BULK; i++) {
+            ids.add(randomPersonId());
+        }
+        return personRepository.findAllById(ids);
+    }
+
+    @Benchmark
+    public Optional<Map<String, Object>> findByIdProjected() {
+        return personRepository.findById(randomPersonId(), NAME_ONLY);
+    }
+
+    @Benchmark
+    public boolean existsById() {
+        return personRepository.existsById(randomPersonId());
+    }
+
+    @Benchmark
+    public Optional<Person> findByName() {
+        return personRepository.findByName(name(randomPersonId()));
+    }
+
+    @Benchmark
+    public boolean existsByTakenName() {
+        return personRepository.existsByName(name(randomPersonId()));
+    }
+
+    /**
+     * The signup case: with {@code nameFilter}, ruled out without a query.
+     */
+    @Benchmark
+    public boolean existsByNewName() {
+        return personRepository.existsByName("New patron " + random.nextLong());
+    }
+
+    @Benchmark
+    public List<Person> searchByNamePrefix() {
+        return personRepository.searchByNamePrefix("Patron 00012", 20);
+    }
+
+    @Benchmark
+    public List<Book> getBooksByPersonId() {
+        return personRepository.getBooksByPersonId(randomPersonId());
+    }
+
+    @Benchmark
+    public List<Book> getOverdueBooksByPersonId() {
+        return personRepository.getOverdueBooksByPersonId(randomPersonId());
+    }
+
+    @Benchmark
+    public KeysetPage<Person> findPageAfter() {
+        return personRepository.findPage(randomPersonId(), null, KeysetPage.DEFAULT_SIZE);
+    }
+
+    @Benchmark
+    public KeysetPage<Map<String, Object>> findPageAfterProjected() {
+        return personRepository.findPage(randomPersonId(), null, KeysetPage.DEFAULT_SIZE, NAME_ONLY);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Person> findAll() {
+        return personRepository.findAll();
+    }
+
+    @Benchmark
+    public long count() {
+        return personRepository.count();
+    }
+
+    @Benchmark
+    public void update() {
+        int id = randomPersonId();
+        Person original = personRepository.findById(id).orElseThrow();
+        Person person = new Person();
+        person.setFullName(name(id));
+        person.setYearOfBirth(1950);
+        personRepository.update(id, person);
+        personRepository.update(id, original);
+    }
+
+    @Benchmark
+    public void saveAndDelete() {
+        Person person = newPerson();
+        personRepository.save(person);
+        personRepository.delete(person);
+    }
+
+    @Benchmark
+    public void saveAndDeleteById() {
+        Person person = personRepository.save(newPerson());
+        personRepository.deleteById(person.getId());
+    }
+
+    @Benchmark
+    public void saveAllAndDeleteAllById() {
+        List<Person> people = new ArrayList<>(BULK);
+        for (int i = 0; i < BULK; i++) {
+            people.add(newPerson());
+        }
+        personRepository.deleteAllById(personRepository.saveAll(people).stream().map(Person::getId).toList());
+    }
+
+    @Benchmark
+    public void saveAllAndDeleteAll() {
+        List<Person> people = new ArrayList<>(BULK);
+        for (int i = 0; i < BULK; i++) {
+            people.add(newPerson());
+        }
+        personRepository.deleteAll(personRepository.saveAll(people));
+    }
+}
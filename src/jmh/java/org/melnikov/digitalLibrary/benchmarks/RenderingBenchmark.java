@@ -0,0 +1,77 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.repositories.KeysetPage;
+import org.openjdk.jmh.annotations.*;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.linkbuilder.StandardLinkBuilder;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.FileTemplateResolver;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thymeleaf rendering of {@code books/index.html} with models of growing size,
+ * using the same engine settings as {@code SpringConfig.templateEngine()}.
+ * Run from the project root so the templates under src/main/webapp are found.
+ *
+ * @author Nikolay Melnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RenderingBenchmark {
+
+    @Param({"20", "1000", "10000"})
+    public int books;
+
+    private SpringTemplateEngine templateEngine;
+    private Context context;
+
+    @Setup
+    public void setUp() {
+        FileTemplateResolver templateResolver = new FileTemplateResolver();
+        templateResolver.setPrefix("src/main/webapp/WEB-INF/views/");
+        templateResolver.setSuffix(".html");
+        templateResolver.setTemplateMode(TemplateMode.HTML);
+        templateResolver.setCharacterEncoding("UTF-8");
+
+        templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setEnableSpringELCompiler(true);
+        templateEngine.setLinkBuilder(new StandardLinkBuilder() {
+            @Override
+            protected String computeContextPath(IExpressionContext context, String base, Map<String, Object> parameters) {
+                return "";
+            }
+        });
+
+        List<Book> model = new ArrayList<>(books);
+        for (int i = 1; i <= books; i++) {
+            Book book = new Book();
+            book.setId(i);
+            book.setTitle("Winter River " + i);
+            book.setAuthor("Author " + i % 5000);
+            book.setYearOfPublication(1800 + i % 223);
+            model.add(book);
+        }
+        context = new Context();
+        context.setVariable("books", model);
+        context.setVariable("page", new KeysetPage<>(model, 1, books, true, true));
+        context.setVariable("size", books);
+        context.setVariable("sort", "id");
+    }
+
+    @Benchmark
+    public void renderBooksIndex() {
+        templateEngine.process("books/index", context, Writer.nullWriter());
+    }
+}
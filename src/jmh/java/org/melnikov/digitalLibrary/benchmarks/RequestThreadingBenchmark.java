@@ -0,0 +1,103 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.melnikov.digitalLibrary.config.MySpringMvcServletInitializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.SpringServletContainerInitializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code GET /books} and {@code GET /books/{id}} through an embedded Tomcat running the whole application,
+ * with requests dispatched on the connector's platform threads or on virtual threads
+ * ({@code server.virtual_threads}). Throughput mode gives requests per second, sample mode the latency
+ * percentiles (p0.99 in the report).
+ * <p>
+ * The connector gets {@code bench.tomcat.threads} threads (default 16) and the connection pool
+ * {@code bench.pool} connections (default 10), so the platform-thread mode is capped by the connector
+ * while virtual threads queue on the pool. Run from the project root so src/main/webapp is found.
+ *
+ * @author Nikolay Melnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(64)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RequestThreadingBenchmark {
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private BenchmarkDatabase database;
+    private Tomcat tomcat;
+    private HttpClient client;
+    private String baseUrl;
+
+    @State(Scope.Thread)
+    public static class Ids {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int bookId() {
+            return 1 + random.nextInt(BenchmarkDatabase.BOOKS);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, LifecycleException {
+        database = BenchmarkDatabase.start();
+        System.setProperty("url", database.jdbcUrl());
+        System.setProperty("pool.max_size", Integer.getInteger("bench.pool", 10).toString());
+        System.setProperty("server.virtual_threads", Boolean.toString(virtualThreads));
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector().setProperty("maxThreads", Integer.getInteger("bench.tomcat.threads", 16).toString());
+        Context context = tomcat.addContext("", new File("src/main/webapp").getAbsolutePath());
+        context.addServletContainerInitializer(new SpringServletContainerInitializer(),
+                Set.of(MySpringMvcServletInitializer.class));
+        tomcat.start();
+
+        baseUrl = "http://localhost:" + tomcat.getConnector().getLocalPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+        database.close();
+    }
+
+    private int get(String path) throws IOException, InterruptedException {
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(path + " returned " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+
+    @Benchmark
+    public int booksIndex(Ids ids) throws IOException, InterruptedException {
+        return get("/books?after=" + ids.bookId());
+    }
+
+    @Benchmark
+    public int bookShow(Ids ids) throws IOException, InterruptedException {
+        return get("/books/" + ids.bookId());
+    }
+}
@@ -0,0 +1,143 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Time to first request: from launching a JVM with the application in {@link org.melnikov.digitalLibrary.server.EmbeddedServer} ({@link StartupProbe})
+ * until its first {@code GET /books} has been answered, for the standard start and the options of the
+ * {@code startup} profile: Spring AOT ({@code -Dspring.aot.enabled=true}), a class-data-sharing archive written by a
+ * training run, and both.
+ * <p>
+ * Needs the jar layout of that profile, so build it first ({@code mvn -Pstartup package}, or point
+ * {@code bench.startup.lib} at it) and run from the project root so src/main/webapp is found. Each
+ * measurement is a single shot, so raise the iteration count for tighter error bars.
+ *
+ * @author Nikolay Melnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 10)
+public class StartupBenchmark {
+
+    @Param({"standard", "cds", "aot", "aot_cds"})
+    public String mode;
+
+    private BenchmarkDatabase database;
+    private Path workDir;
+    private List<String> command;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException, URISyntaxException {
+        Path lib = Path.of(System.getProperty("bench.startup.lib", "target/startup/lib"));
+        if (!Files.isDirectory(lib)) {
+            throw new IllegalStateException(lib + " not found, build it with mvn -Pstartup package");
+        }
+        database = BenchmarkDatabase.start();
+        workDir = Files.createTempDirectory("startup");
+
+        // jars only, so that CDS can archive every class; the probe jar comes first for its database.properties
+        List<String> classPath = new ArrayList<>();
+        classPath.add(probeJar().toString());
+        try (Stream<Path> jars = Files.list(lib)) {
+            jars.filter(jar -> jar.toString().endsWith(".jar")).sorted().forEach(jar -> classPath.add(jar.toString()));
+        }
+
+        List<String> base = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", String.join(File.pathSeparator, classPath),
+                "-Durl=" + database.jdbcUrl()));
+        if (mode.startsWith("aot")) {
+            base.add("-Dspring.aot.enabled=true");
+        }
+        command = new ArrayList<>(base);
+        if (mode.endsWith("cds")) {
+            Path archive = workDir.resolve("app.jsa");
+            List<String> training = new ArrayList<>(base);
+            training.add("-XX:ArchiveClassesAtExit=" + archive);
+            training.add(StartupProbe.class.getName());
+            training.add("exit");
+            Process trainingRun = start(training);
+            awaitReady(trainingRun);
+            if (trainingRun.waitFor() != 0 || !Files.exists(archive)) {
+                throw new IllegalStateException("Training run did not write " + archive);
+            }
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.add(StartupProbe.class.getName());
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopApplication() throws InterruptedException {
+        if (process != null) {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            process = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public Process firstRequest() throws IOException {
+        process = start(command);
+        awaitReady(process);
+        return process;
+    }
+
+    private Process start(List<String> command) throws IOException {
+        return new ProcessBuilder(command)
+                .redirectError(workDir.resolve("probe.log").toFile())
+                .start();
+    }
+
+    private void awaitReady(Process child) throws IOException {
+        BufferedReader output = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8));
+        for (String line = output.readLine(); line != null; line = output.readLine()) {
+            if (line.equals("READY")) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Application exited before its first request, see " + workDir.resolve("probe.log"));
+    }
+
+    /**
+     * {@link StartupProbe} and the benchmark's own {@code database.properties}, packed so the child's class path
+     * has no directories.
+     */
+    private Path probeJar() throws IOException, URISyntaxException {
+        Path jmhClasses = Path.of(StartupBenchmark.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Path jar = workDir.resolve("probe.jar");
+        String probeClass = StartupProbe.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (String entry : List.of(probeClass, "database.properties")) {
+                out.putNextEntry(new JarEntry(entry));
+                Files.copy(jmhClasses.resolve(entry), out);
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,53 @@
+package org.melnikov.digitalLibrary.benchmarks;
+
+import org.melnikov.digitalLibrary.server.EmbeddedServer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+
+/**
+ * Child process of {@link StartupBenchmark}: starts the application in {@link EmbeddedServer}, serves one
+ * {@code GET /books} and prints {@code READY}. With the argument {@code exit} it then shuts down, which is
+ * how the class-data-sharing training run ends and writes its archive; otherwise it keeps running until killed.
+ *
+ * @author Nikolay Melnikov
+ */
+public final class StartupProbe {
+
+    private StartupProbe() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            run(args.length > 0 && "exit".equals(args[0]));
+        } catch (Exception e) {
+            // Tomcat's threads would keep a failed probe alive
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void run(boolean exit) throws Exception {
+        System.setProperty("server.port", "0");
+        System.setProperty("server.webapp_dir", "src/main/webapp");
+        EmbeddedServer server = EmbeddedServer.start(EmbeddedServer.settings());
+
+        HttpURLConnection connection = (HttpURLConnection) URI.create(
+                "http://localhost:" + server.port() + "/books").toURL().openConnection();
+        try (InputStream body = connection.getInputStream()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+        if (connection.getResponseCode() != 200) {
+            throw new IllegalStateException("/books returned " + connection.getResponseCode());
+        }
+        System.out.println("READY");
+        System.out.flush();
+
+        if (exit) {
+            server.shutdown();
+            System.exit(0);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.melnikov.digitalLibrary.bulk;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.models.Person;
+import org.melnikov.digitalLibrary.repositories.CatalogSnapshot;
+import org.melnikov.digitalLibrary.repositories.PersonNameFilter;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Loads CSV files into {@code book} / {@code person} through the COPY protocol.
+ * <p>
+ * Rows are parsed and validated one at a time against the constraints declared on {@link Book} / {@link Person},
+ * valid rows are streamed into a temporary staging table and merged into the real table with one
+ * {@code INSERT ... SELECT} at the end, all in a single transaction. Nothing but the current row is held in memory.
+ *
+ * @author Nikolay Melnikov
+ */
+@Component
+public class BulkImporter {
+
+    static final int MAX_REPORTED_REJECTIONS = 100;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final CatalogSnapshot catalogSnapshot;
+    private final PersonNameFilter personNameFilter;
+
+    @Autowired
+    public BulkImporter(DataSource dataSource, JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager,
+                        @Qualifier("validator") Validator validator, CatalogSnapshot catalogSnapshot,
+                        PersonNameFilter personNameFilter) {
+        this.dataSource = dataSource;
+        this.catalogSnapshot = catalogSnapshot;
+        this.personNameFilter = personNameFilter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+    }
+
+    public ImportReport importBooks(InputStream csv) {
+        ImportReport report = run(csv, BOOKS);
+        if (report.rowsImported() > 0) {
+            catalogSnapshot.reload();
+        }
+        return report;
+    }
+
+    public ImportReport importPeople(InputStream csv) {
+        ImportReport report = run(csv, PEOPLE);
+        if (report.rowsImported() > 0) {
+            personNameFilter.reload();
+        }
+        return report;
+    }
+
+    public ImportReport importBooks(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return importBooks(in);
+        }
+    }
+
+    public ImportReport importPeople(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return importPeople(in);
+        }
+    }
+
+    private ImportReport run(InputStream csv, Target<?> target) {
+        long started = System.nanoTime();
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.execute(target.stagingDdl);
+            Counts counts;
+            try {
+                counts = copy(csv, target);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (SQLException e) {
+                throw new IllegalStateException("COPY into " + target.stagingTable + " failed", e);
+            }
+            int imported = jdbcTemplate.update(target.mergeSql);
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+            long rejected = counts.read - imported;
+            if (counts.staged > imported) {
+                addRejection(counts.rejections, (counts.staged - imported) + " row(s): already present");
+            }
+            return new ImportReport(target.table, counts.read, imported, rejected, elapsedMillis, counts.rejections);
+        });
+    }
+
+    private <T> Counts copy(InputStream csv, Target<T> target) throws IOException, SQLException {
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8)));
+        List<String> header = reader.next();
+        if (header == null) {
+            throw new IllegalArgumentException("CSV input is empty");
+        }
+        int[] positions = new int[target.columns.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = header.indexOf(target.columns.get(i));
+            if (positions[i] < 0) {
+                throw new IllegalArgumentException("CSV header must contain column " + target.columns.get(i));
+            }
+        }
+
+        Counts counts = new Counts();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        try (Writer copy = new BufferedWriter(new OutputStreamWriter(
+                new PGCopyOutputStream(pgConnection, target.copySql, COPY_BUFFER_SIZE), StandardCharsets.UTF_8))) {
+            List<String> record;
+            String[] values = new String[positions.length];
+            while ((record = reader.next()) != null) {
+                counts.read++;
+                for (int i = 0; i < positions.length; i++) {
+                    values[i] = positions[i] < record.size() ? record.get(positions[i]) : null;
+                }
+                String problem = validate(target, values);
+                if (problem != null) {
+                    addRejection(counts.rejections, "line " + reader.getRecordLine() + ": " + problem);
+                    continue;
+                }
+                writeCopyRow(copy, values);
+                counts.staged++;
+            }
+        }
+        return counts;
+    }
+
+    private <T> String validate(Target<T> target, String[] values) {
+        T entity;
+        try {
+            entity = target.toEntity(values);
+        } catch (NumberFormatException e) {
+            return "not a number: " + e.getMessage();
+        }
+        Set<ConstraintViolation<T>> violations = validator.validate(entity);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static void writeCopyRow(Writer copy, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                copy.write(',');
+            }
+            String value = values[i];
+            // COPY ... (FORMAT csv) reads an unquoted empty field as NULL
+            if (value != null) {
+                copy.write('"');
+                copy.write(value.replace("\"", "\"\""));
+                copy.write('"');
+            }
+        }
+        copy.write('\n');
+    }
+
+    private static void addRejection(List<String> rejections, String rejection) {
+        if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+            rejections.add(rejection);
+        }
+    }
+
+    private static Integer parseInteger(String value) {
+        return value == null || value.isBlank() ? null : Integer.valueOf(value.trim());
+    }
+
+    private static final class Counts {
+        private long read;
+        private long staged;
+        private final List<String> rejections = new ArrayList<>();
+    }
+
+    private abstract static class Target<T> {
+        private final String table;
+        private final String stagingTable;
+        private final List<String> columns;
+        private final String stagingDdl;
+        private final String copySql;
+        private final String mergeSql;
+
+        Target(String table, List<String> columns, String stagingColumns, String mergeSql) {
+            this.table = table;
+            this.stagingTable = table + "_import";
+            this.columns = columns;
+            this.stagingDdl = "CREATE TEMP TABLE " + stagingTable + " (" + stagingColumns + ") ON COMMIT DROP";
+            this.copySql = "COPY " + stagingTable + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)";
+            this.mergeSql = mergeSql;
+        }
+
+        abstract T toEntity(String[] values);
+    }
+
+    private static final Target<Book> BOOKS = new Target<>("book",
+            List.of("title", "author", "year_of_publication"),
+            "title varchar, author varchar, year_of_publication integer",
+            "INSERT INTO book (title, author, year_of_publication) " +
+                    "SELECT title, author, year_of_publication FROM book_import") {
+        @Override
+        Book toEntity(String[] values) {
+            Book book = new Book();
+            book.setTitle(values[0]);
+            book.setAuthor(values[1]);
+            book.setYearOfPublication(parseInteger(values[2]));
+            return book;
+        }
+    };
+
+    private static final Target<Person> PEOPLE = new Target<>("person",
+            List.of("full_name", "year_of_birth"),
+            "full_name varchar(200), year_of_birth integer",
+            "INSERT INTO person (full_name, year_of_birth) " +
+                    "SELECT DISTINCT ON (full_name) full_name, year_of_birth FROM person_import " +
+                    "ON CONFLICT (full_name) DO NOTHING") {
+        @Override
+        Person toEntity(String[] values) {
+            Person person = new Person();
+            person.setFullName(values[0]);
+            person.setYearOfBirth(parseInteger(values[1]));
+            return person;
+        }
+    };
+}
@@ -0,0 +1,110 @@
+package org.melnikov.digitalLibrary.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal streaming RFC 4180 reader: quoted fields, doubled quotes and line breaks inside quotes.
+ * Only the current record is kept in memory.
+ *
+ * @author Nikolay Melnikov
+ */
+class CsvReader {
+
+    private final Reader reader;
+    private final StringBuilder field = new StringBuilder();
+    private long lineNumber = 1;
+    private long recordLine;
+    private int pending = -2;
+
+    CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the next record, or {@code null} at the end of input
+     * @throws IllegalArgumentException if the input is not valid CSV; {@link IOException} is left to reading
+     */
+    List<String> next() throws IOException {
+        int c = read();
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = lineNumber;
+        List<String> record = new ArrayList<>();
+        field.setLength(0);
+        boolean quoted = false;
+        boolean inQuotes = false;
+
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Malformed CSV: unterminated quoted field starting at line "
+                            + recordLine);
+                }
+                if (c == '"') {
+                    int lookahead = read();
+                    if (lookahead == '"') {
+                        field.append('"');
+                    } else {
+                        inQuotes = false;
+                        c = lookahead;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == ',') {
+                record.add(finishField(quoted));
+                quoted = false;
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r') {
+                    int lookahead = read();
+                    if (lookahead != '\n') {
+                        pending = lookahead;
+                    }
+                }
+                record.add(finishField(quoted));
+                return record;
+            } else if (c == '"' && field.length() == 0 && !quoted) {
+                inQuotes = true;
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * @return the line on which the record returned by the last {@link #next()} call started
+     */
+    long getRecordLine() {
+        return recordLine;
+    }
+
+    private String finishField(boolean quoted) {
+        String value = field.toString();
+        field.setLength(0);
+        return !quoted && value.isEmpty() ? null : value;
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pending != -2) {
+            c = pending;
+            pending = -2;
+        } else {
+            c = reader.read();
+        }
+        if (c == '\n') {
+            lineNumber++;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,31 @@
+package org.melnikov.digitalLibrary.bulk;
+
+import java.util.List;
+
+/**
+ * Outcome of one bulk import. {@code rejections} holds at most {@link BulkImporter#MAX_REPORTED_REJECTIONS} messages.
+ *
+ * @author Nikolay Melnikov
+ */
+public record ImportReport(String target, long rowsRead, long rowsImported, long rowsRejected,
+                           long elapsedMillis, List<String> rejections) {
+
+    public double rowsPerSecond() {
+        return elapsedMillis == 0 ? rowsImported : rowsImported * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder()
+                .append("target: ").append(target).append('\n')
+                .append("rows read: ").append(rowsRead).append('\n')
+                .append("rows imported: ").append(rowsImported).append('\n')
+                .append("rows rejected: ").append(rowsRejected).append('\n')
+                .append("elapsed ms: ").append(elapsedMillis).append('\n')
+                .append("rows/sec: ").append(String.format("%.1f", rowsPerSecond())).append('\n');
+        for (String rejection : rejections) {
+            report.append("rejected ").append(rejection).append('\n');
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package org.melnikov.digitalLibrary.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of entities by id, evicting by size and by time since write.
+ * Only found entities are cached; the owning repository invalidates entries on every write path.
+ * A row read before a write can never be cached after that write's invalidation: {@link #get} loads under the
+ * entry's lock, which {@link #invalidate} waits for, and {@link #putIfNotInvalidatedSince} drops values read
+ * before any invalidation.
+ * Hit/miss/eviction counters are exported over JMX.
+ *
+ * @author Nikolay Melnikov
+ */
+@ManagedResource
+public class EntityCache<V> {
+
+    private final Cache<Integer, V> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public EntityCache(long maximumSize, Duration timeToLive) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * The cached entity, or else the one {@code loader} finds, cached. Concurrent misses on one id share a single
+     * load; {@code loader} must not use this cache.
+     */
+    public Optional<V> get(Integer id, Function<Integer, Optional<V>> loader) {
+        return Optional.ofNullable(cache.get(id, key -> loader.apply(key).orElse(null)));
+    }
+
+    public Optional<V> getIfPresent(Integer id) {
+        return Optional.ofNullable(cache.getIfPresent(id));
+    }
+
+    /**
+     * To be taken before reading the value later passed to {@link #putIfNotInvalidatedSince}.
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a value loaded outside {@link #get}, such as one side of a join, unless any entry was invalidated
+     * after {@code stamp} was taken: the value may predate that write.
+     */
+    public void putIfNotInvalidatedSince(long stamp, Integer id, V value) {
+        if (invalidations.get() != stamp) {
+            return;
+        }
+        // the check is repeated under the entry's lock, which invalidate() takes after counting
+        cache.asMap().compute(id, (key, current) -> invalidations.get() == stamp ? value : current);
+    }
+
+    public void invalidate(Integer id) {
+        invalidations.incrementAndGet();
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll(Iterable<Integer> ids) {
+        invalidations.incrementAndGet();
+        cache.invalidateAll(ids);
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    @ManagedAttribute
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    @ManagedAttribute
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    public Cache<Integer, V> getNativeCache() {
+        return cache;
+    }
+}
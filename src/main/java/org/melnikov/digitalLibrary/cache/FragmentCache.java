@@ -0,0 +1,104 @@
+package org.melnikov.digitalLibrary.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.melnikov.digitalLibrary.repositories.ContentVersion;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Rendered HTML of page fragments, so a page built around an expensive list only queries and renders the list
+ * when its data changed.
+ * <p>
+ * Each entry remembers the {@link ContentVersion} tag it was rendered for. A lookup with a different tag, i.e. after
+ * any write to the underlying data, renders afresh and replaces the entry, so fragments are evicted on writes without
+ * the repositories knowing about views. Hit/miss/eviction counters are exported over JMX.
+ *
+ * @author Nikolay Melnikov
+ */
+@ManagedResource
+public class FragmentCache {
+
+    private final ITemplateEngine templateEngine;
+    private final ConcurrentStatsCounter stats = new ConcurrentStatsCounter();
+    private final Cache<String, Fragment> cache;
+
+    public FragmentCache(ITemplateEngine templateEngine, long maximumSize) {
+        this.templateEngine = templateEngine;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats(() -> stats)
+                .build();
+    }
+
+    /**
+     * HTML of {@code template} for the data at {@code version}, rendered with {@code variables} on a miss.
+     *
+     * @param key identifies the fragment instance, e.g. the template plus the ids or query it shows
+     */
+    public String render(String key, ContentVersion version, String template, ServletWebRequest webRequest,
+                         Supplier<Map<String, Object>> variables) {
+        // looked up through the map view, which records no stats, so that a stale entry counts as a miss
+        Fragment cached = cache.asMap().get(key);
+        if (cached != null && cached.tag().equals(version.tag())) {
+            stats.recordHits(1);
+            return cached.html();
+        }
+        stats.recordMisses(1);
+        HttpServletRequest request = webRequest.getRequest();
+        HttpServletResponse response = webRequest.getResponse();
+        WebContext context = new WebContext(JakartaServletWebApplication.buildApplication(request.getServletContext())
+                .buildExchange(request, response), request.getLocale(), variables.get());
+        String html = templateEngine.process(template, context);
+        cache.put(key, new Fragment(version.tag(), html));
+        return html;
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    @ManagedAttribute
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    @ManagedAttribute
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    public Cache<String, Fragment> getNativeCache() {
+        return cache;
+    }
+
+    public record Fragment(String tag, String html) {
+    }
+}
@@ -0,0 +1,146 @@
+package org.melnikov.digitalLibrary.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Jackson converter that gzip- or deflate-encodes bodies of at least {@code minSize} bytes when the request's
+ * {@code Accept-Encoding} allows it, preferring gzip on equal quality.
+ * <p>
+ * Done here rather than in a servlet filter because handlers may run on a virtual thread after the filter chain
+ * has returned (see {@link VirtualThreadDispatcherServlet}), so a filter could not finish the stream. The body is
+ * serialized and compressed in memory, which API pages bounded by {@code KeysetPage.MAX_SIZE} allow, and is sent
+ * with its {@code Content-Length}. An ETag on a compressed response is made weak, since the bytes differ from the
+ * identity encoding.
+ *
+ * @author Nikolay Melnikov
+ */
+public class CompressingJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+
+    private final int minSize;
+    private final int level;
+
+    public CompressingJsonHttpMessageConverter(ObjectMapper objectMapper, int minSize, int level) {
+        super(objectMapper);
+        this.minSize = minSize;
+        this.level = level;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        HttpHeaders headers = outputMessage.getHeaders();
+        ByteArrayOutputStream json = new ByteArrayOutputStream(8192);
+        super.writeInternal(object, type, new HttpOutputMessage() {
+            @Override
+            public OutputStream getBody() {
+                return json;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        });
+
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        ServletRequestAttributes attributes = RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes current
+                ? current : null;
+        String encoding = attributes != null && json.size() >= minSize && !headers.containsKey(HttpHeaders.CONTENT_ENCODING)
+                ? acceptedEncoding(attributes.getRequest()) : null;
+        byte[] body = encoding == null ? json.toByteArray() : compress(json, encoding);
+        if (encoding != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, encoding);
+            // set by ConditionalGet on the servlet response itself, so replace it there rather than in headers
+            HttpServletResponse response = attributes.getResponse();
+            String etag = response == null ? null : response.getHeader(HttpHeaders.ETAG);
+            if (etag != null && !etag.startsWith("W/")) {
+                response.setHeader(HttpHeaders.ETAG, "W/" + etag);
+            }
+        }
+        headers.setContentLength(body.length);
+        outputMessage.getBody().write(body);
+    }
+
+    private byte[] compress(ByteArrayOutputStream json, String encoding) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(512, json.size() / 4));
+        if (GZIP.equals(encoding)) {
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed, 8192) {
+                {
+                    def.setLevel(level);
+                }
+            }) {
+                json.writeTo(out);
+            }
+        } else {
+            // HTTP "deflate" is the zlib format, not raw deflate
+            Deflater deflater = new Deflater(level);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater, 8192)) {
+                json.writeTo(out);
+            } finally {
+                deflater.end();
+            }
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * gzip or deflate by their {@code q} values in {@code Accept-Encoding}, where {@code *} stands for
+     * any coding not listed; {@code null} for identity.
+     */
+    private static String acceptedEncoding(HttpServletRequest request) {
+        double gzip = -1;
+        double deflate = -1;
+        double any = 0;
+        for (var values = request.getHeaders(HttpHeaders.ACCEPT_ENCODING); values.hasMoreElements(); ) {
+            for (String coding : values.nextElement().split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim().toLowerCase();
+                double quality = quality(parts);
+                switch (name) {
+                    case GZIP, "x-gzip" -> gzip = quality;
+                    case DEFLATE -> deflate = quality;
+                    case "*" -> any = quality;
+                    default -> {
+                    }
+                }
+            }
+        }
+        gzip = gzip < 0 ? any : gzip;
+        deflate = deflate < 0 ? any : deflate;
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -4,8 +4,13 @@ import jakarta.servlet.DispatcherType;
 import jakarta.servlet.FilterRegistration;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
+import org.springframework.aot.AotDetector;
+import org.springframework.context.aot.AotApplicationContextInitializer;
 import org.springframework.web.filter.CharacterEncodingFilter;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
 import org.springframework.web.filter.HiddenHttpMethodFilter;
+import org.springframework.web.servlet.FrameworkServlet;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
 import java.util.EnumSet;
@@ -24,11 +29,31 @@ public class MySpringMvcServletInitializer extends AbstractAnnotationConfigDispa
         return new Class[]{SpringConfig.class};
     }
 
+    /**
+     * With {@code -Dspring.aot.enabled=true}, the bean definitions come from the code {@link SpringAotGenerator}
+     * generated at build time instead of parsing {@link SpringConfig} again.
+     */
+    @Override
+    protected WebApplicationContext createServletApplicationContext() {
+        if (!AotDetector.useGeneratedArtifacts()) {
+            return super.createServletApplicationContext();
+        }
+        GenericWebApplicationContext context = new GenericWebApplicationContext();
+        AotApplicationContextInitializer.forInitializerClasses(
+                SpringConfig.class.getName() + "__ApplicationContextInitializer").initialize(context);
+        return context;
+    }
+
     @Override
     protected String[] getServletMappings() {
         return new String[]{"/"};
     }
 
+    @Override
+    protected FrameworkServlet createDispatcherServlet(WebApplicationContext servletAppContext) {
+        return new VirtualThreadDispatcherServlet(servletAppContext);
+    }
+
     @Override
     public void onStartup(ServletContext servletContext) throws ServletException {
         super.onStartup(servletContext);
@@ -37,8 +62,9 @@ public class MySpringMvcServletInitializer extends AbstractAnnotationConfigDispa
     }
 
     public void registerHiddenFieldFilter(ServletContext servletContext) {
-        servletContext.addFilter("hiddenMethodFilter", new HiddenHttpMethodFilter())
-                .addMappingForUrlPatterns(null, true, "/*");
+        FilterRegistration.Dynamic filter = servletContext.addFilter("hiddenMethodFilter", new HiddenHttpMethodFilter());
+        filter.setAsyncSupported(true);
+        filter.addMappingForUrlPatterns(null, true, "/*");
 
     }
 
@@ -50,6 +76,7 @@ public class MySpringMvcServletInitializer extends AbstractAnnotationConfigDispa
         characterEncodingFilter.setForceEncoding(true);
 
         FilterRegistration.Dynamic filter = servletContext.addFilter("characterEncodingFilter", characterEncodingFilter);
+        filter.setAsyncSupported(true);
         filter.addMappingForUrlPatterns(dispatcherTypes, true, "/*");
 
     }
@@ -0,0 +1,59 @@
+package org.melnikov.digitalLibrary.config;
+
+import org.springframework.aot.generate.ClassNameGenerator;
+import org.springframework.aot.generate.DefaultGenerationContext;
+import org.springframework.aot.generate.FileSystemGeneratedFiles;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.aot.ApplicationContextAotGenerator;
+import org.springframework.javapoet.ClassName;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Build step of the {@code startup} profile: processes {@link SpringConfig} ahead of time, so that configuration
+ * parsing, {@code @Import} and {@code @Bean} introspection and the CGLIB proxy of the configuration class move
+ * from every startup to the build.
+ * <p>
+ * Writes the generated bean-definition sources, resource hints and proxy classes to the three given directories,
+ * replacing what a previous run left there; the build compiles the sources and copies the classes next to the
+ * application's own. The entry point is
+ * {@code SpringConfig__ApplicationContextInitializer}, which {@link MySpringMvcServletInitializer} applies when
+ * the JVM runs with {@code -Dspring.aot.enabled=true}. Only bean definitions are created here, no beans, so the
+ * defaults of {@code database.properties.origin} are enough and the profile builds from a clean checkout.
+ *
+ * @author Nikolay Melnikov
+ */
+public final class SpringAotGenerator {
+
+    private SpringAotGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("Usage: SpringAotGenerator <sources dir> <resources dir> <classes dir>");
+        }
+        Path sources = Path.of(args[0]);
+        Path resources = Path.of(args[1]);
+        Path classes = Path.of(args[2]);
+        for (Path directory : List.of(sources, resources, classes)) {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+        FileSystemGeneratedFiles generatedFiles = new FileSystemGeneratedFiles(kind -> switch (kind) {
+            case SOURCE -> sources;
+            case RESOURCE -> resources;
+            case CLASS -> classes;
+        });
+        DefaultGenerationContext generationContext = new DefaultGenerationContext(
+                new ClassNameGenerator(ClassName.get(SpringConfig.class)), generatedFiles);
+
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.register(SpringConfig.class);
+            ClassName initializer = new ApplicationContextAotGenerator().processAheadOfTime(context, generationContext);
+            generationContext.writeGeneratedContent();
+            System.out.println("Generated " + initializer.canonicalName());
+        }
+    }
+}
@@ -1,31 +1,98 @@
 package org.melnikov.digitalLibrary.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.melnikov.digitalLibrary.bulk.BulkImporter;
+import org.melnikov.digitalLibrary.cache.EntityCache;
+import org.melnikov.digitalLibrary.cache.FragmentCache;
+import org.melnikov.digitalLibrary.controllers.BooksApiController;
+import org.melnikov.digitalLibrary.controllers.BooksController;
+import org.melnikov.digitalLibrary.controllers.ImportController;
+import org.melnikov.digitalLibrary.controllers.MetricsController;
+import org.melnikov.digitalLibrary.controllers.PeopleApiController;
+import org.melnikov.digitalLibrary.controllers.PeopleController;
+import org.melnikov.digitalLibrary.dao.PersonDAO;
+import org.melnikov.digitalLibrary.datasource.ReadYourWritesInterceptor;
+import org.melnikov.digitalLibrary.datasource.ReplicaRoutingDataSource;
+import org.melnikov.digitalLibrary.export.CatalogExporter;
+import org.melnikov.digitalLibrary.loans.LoanBatcher;
+import org.melnikov.digitalLibrary.loans.OverdueScanner;
+import org.melnikov.digitalLibrary.mappers.BookMapper;
+import org.melnikov.digitalLibrary.metrics.HandlerMetricsInterceptor;
+import org.melnikov.digitalLibrary.metrics.InstrumentedJdbcTemplate;
+import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.models.Person;
+import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.melnikov.digitalLibrary.repositories.CatalogSnapshot;
+import org.melnikov.digitalLibrary.repositories.ContentVersions;
+import org.melnikov.digitalLibrary.repositories.PersonNameFilter;
+import org.melnikov.digitalLibrary.repositories.PersonRepository;
+import org.melnikov.digitalLibrary.util.PersonValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.EnableMBeanExport;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ViewResolverRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.thymeleaf.spring6.SpringTemplateEngine;
 import org.thymeleaf.spring6.templateresolver.SpringResourceTemplateResolver;
 import org.thymeleaf.spring6.view.ThymeleafViewResolver;
 
-import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 /**
+ * Components are listed in {@link Import} rather than found by classpath scanning, which saves reading every class
+ * file under the package at startup; a new {@code @Component} or controller has to be added there.
+ * <p>
+ * Settings are read from {@code database.properties}, or the location in {@code settings.file}, over the committed
+ * defaults of {@code database.properties.origin}, so that the build, whose AOT step parses this class, needs no
+ * local file and a deployment can keep its credentials outside the artifact. System properties and environment
+ * variables ({@code DB_PASSWORD} for {@code db_password}) override both.
+ *
  * @author Nikolay Melnikov
  */
 @Configuration
-@ComponentScan("org.melnikov.digitalLibrary")
+@Import({
+        BooksController.class, BooksApiController.class, PeopleController.class, PeopleApiController.class,
+        ImportController.class, MetricsController.class,
+        BooksRepository.class, PersonRepository.class, ContentVersions.class, PersonDAO.class, BookMapper.class,
+        PersonValidator.class, BulkImporter.class, CatalogExporter.class, OverdueScanner.class
+})
 @EnableWebMvc
-@PropertySource("classpath:database.properties")
+@EnableMBeanExport(registration = RegistrationPolicy.IGNORE_EXISTING)
+@EnableScheduling
+@PropertySource(value = {"classpath:database.properties.origin", "${settings.file:classpath:database.properties}"},
+        ignoreResourceNotFound = true)
 public class SpringConfig implements WebMvcConfigurer {
 
     private final ApplicationContext applicationContext;
@@ -43,6 +110,8 @@ public class SpringConfig implements WebMvcConfigurer {
         templateResolver.setApplicationContext(applicationContext);
         templateResolver.setPrefix("/WEB-INF/views/");
         templateResolver.setSuffix(".html");
+        templateResolver.setCharacterEncoding("UTF-8");
+        templateResolver.setCacheable(environment.getProperty("templates.cacheable", Boolean.class, true));
         return templateResolver;
     }
 
@@ -54,6 +123,29 @@ public class SpringConfig implements WebMvcConfigurer {
         return templateEngine;
     }
 
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerMetricsInterceptor(meterRegistry()))
+                .excludePathPatterns("/metrics");
+        if (!replicaUrls().isEmpty()) {
+            registry.addInterceptor(new ReadYourWritesInterceptor(Duration.ofMillis(
+                    environment.getProperty("replica.read_your_writes_ms", Long.class, 5_000L))));
+        }
+    }
+
+    /**
+     * JSON for the {@code /api} controllers, compressed per {@code api.compression.*}.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        CompressingJsonHttpMessageConverter json = new CompressingJsonHttpMessageConverter(
+                Jackson2ObjectMapperBuilder.json().build(),
+                environment.getProperty("api.compression.min_size", Integer.class, 1024),
+                environment.getProperty("api.compression.level", Integer.class, 6));
+        converters.removeIf(converter -> converter instanceof MappingJackson2HttpMessageConverter);
+        converters.add(json);
+    }
+
     @Override
     public void configureViewResolvers(ViewResolverRegistry registry) {
         ThymeleafViewResolver resolver = new ThymeleafViewResolver();
@@ -62,19 +154,189 @@ public class SpringConfig implements WebMvcConfigurer {
         registry.viewResolver(resolver);
     }
 
+    /**
+     * Backs the {@code /metrics} endpoint: JDBC statements, controller handlers, the connection pool,
+     * the entity caches and the JVM.
+     */
+    @Bean
+    public PrometheusMeterRegistry meterRegistry() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        new JvmMemoryMetrics().bindTo(registry);
+        new JvmGcMetrics().bindTo(registry);
+        new JvmThreadMetrics().bindTo(registry);
+        new ProcessorMetrics().bindTo(registry);
+        return registry;
+    }
+
+    /**
+     * Pooled connections, so repositories reuse warm sessions (and the driver's server-side
+     * prepared statements) instead of opening a new connection per query.
+     * Active, idle and waiting connection counts are published over JMX under {@code com.zaxxer.hikari}
+     * and as {@code hikaricp_connections_*} metrics.
+     */
+    @Bean
+    @Primary
+    public HikariDataSource dataSource() {
+        return new HikariDataSource(poolConfig("digitalLibrary", environment.getProperty("url")));
+    }
+
+    /**
+     * Read-only repository queries go here: round-robin over {@code replica.urls} (comma-separated), falling back
+     * to the primary. Without replicas every read goes to the primary.
+     */
     @Bean
-    public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName(Objects.requireNonNull(environment.getProperty("driver")));
-        dataSource.setUrl(environment.getProperty("url"));
-        dataSource.setUsername(environment.getProperty("db_username"));
-        dataSource.setPassword(environment.getProperty("db_password"));
+    public ReplicaRoutingDataSource replicaDataSource() {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls()) {
+            HikariConfig config = poolConfig("digitalLibrary-replica-" + (replicas.size() + 1), url);
+            config.setConnectionTimeout(environment.getProperty("replica.connection_timeout_ms", Long.class, 1_000L));
+            // a replica that is down at startup is retried by the health check instead of failing the context
+            config.setInitializationFailTimeout(-1);
+            replicas.add(new HikariDataSource(config));
+        }
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(dataSource(), replicas,
+                Duration.ofMillis(environment.getProperty("replica.health_check_ms", Long.class, 5_000L)));
+        Gauge.builder("db.replicas.healthy", dataSource, ReplicaRoutingDataSource::healthyReplicas)
+                .description("Replicas currently receiving reads")
+                .register(meterRegistry());
         return dataSource;
     }
 
+    private List<String> replicaUrls() {
+        return Arrays.stream(environment.getProperty("replica.urls", "").split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .toList();
+    }
+
+    private HikariConfig poolConfig(String poolName, String url) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDriverClassName(Objects.requireNonNull(environment.getProperty("driver")));
+        config.setJdbcUrl(url);
+        config.setUsername(environment.getProperty("db_username"));
+        config.setPassword(environment.getProperty("db_password"));
+
+        config.setMaximumPoolSize(environment.getProperty("pool.max_size", Integer.class, 10));
+        config.setMinimumIdle(environment.getProperty("pool.min_idle", Integer.class, 2));
+        config.setConnectionTimeout(environment.getProperty("pool.connection_timeout_ms", Long.class, 3_000L));
+        config.setIdleTimeout(environment.getProperty("pool.idle_timeout_ms", Long.class, 600_000L));
+        config.setMaxLifetime(environment.getProperty("pool.max_lifetime_ms", Long.class, 1_800_000L));
+        config.setRegisterMbeans(true);
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry()));
+
+        config.addDataSourceProperty("prepareThreshold",
+                environment.getProperty("pool.prepare_threshold", "1"));
+        config.addDataSourceProperty("preparedStatementCacheQueries",
+                environment.getProperty("pool.prepared_statement_cache_queries", "256"));
+        return config;
+    }
+
+    /**
+     * Applies the versioned scripts from {@code db/migration} on startup and records them in
+     * {@code flyway_schema_history}. A database restored from the init_data dump is baselined at version 1.
+     */
+    @Bean(initMethod = "migrate")
+    public Flyway flyway() {
+        return Flyway.configure()
+                .dataSource(dataSource())
+                .locations("classpath:db/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load();
+    }
+
     @Bean
+    @Primary
+    @DependsOn("flyway")
     public JdbcTemplate jdbcTemplate() {
-        return new JdbcTemplate(dataSource());
+        return new InstrumentedJdbcTemplate(dataSource(), meterRegistry());
+    }
+
+    @Bean
+    @DependsOn("flyway")
+    public JdbcTemplate replicaJdbcTemplate() {
+        return new InstrumentedJdbcTemplate(replicaDataSource(), meterRegistry());
+    }
+
+    /**
+     * Book index served from memory when {@code catalog.snapshot.enabled=true}; inactive otherwise.
+     */
+    @Bean(initMethod = "reload")
+    public CatalogSnapshot catalogSnapshot() {
+        CatalogSnapshot snapshot = new CatalogSnapshot(jdbcTemplate(),
+                environment.getProperty("catalog.snapshot.enabled", Boolean.class, false),
+                environment.getProperty("catalog.snapshot.max_books", Integer.class, 1_000_000));
+        Gauge.builder("catalog.snapshot.books", snapshot, CatalogSnapshot::size)
+                .description("Books held by the in-memory catalog snapshot")
+                .register(meterRegistry());
+        return snapshot;
+    }
+
+    /**
+     * Checkout/return path of the book pages; group-commits them when {@code loans.batching.enabled=true}.
+     */
+    @Bean(destroyMethod = "close")
+    public LoanBatcher loanBatcher(BooksRepository booksRepository) {
+        return new LoanBatcher(booksRepository, transactionManager(), meterRegistry(),
+                environment.getProperty("loans.batching.enabled", Boolean.class, false),
+                environment.getProperty("loans.batching.queue_capacity", Integer.class, 1_000),
+                environment.getProperty("loans.batching.max_batch", Integer.class, 100),
+                Duration.ofMillis(environment.getProperty("loans.batching.max_delay_ms", Long.class, 2L)),
+                Duration.ofMillis(environment.getProperty("loans.batching.offer_timeout_ms", Long.class, 1_000L)),
+                Duration.ofMillis(environment.getProperty("loans.batching.result_timeout_ms", Long.class, 30_000L)));
+    }
+
+    /**
+     * Lets new-person validation skip the name lookup for names nobody has; see {@link PersonNameFilter}.
+     */
+    @Bean(initMethod = "reload")
+    public PersonNameFilter personNameFilter() {
+        return new PersonNameFilter(jdbcTemplate(),
+                environment.getProperty("people.name_filter.enabled", Boolean.class, true),
+                environment.getProperty("people.name_filter.false_positive_rate", Double.class, 0.01));
+    }
+
+    @Bean
+    public EntityCache<Book> bookCache() {
+        EntityCache<Book> cache = new EntityCache<>(environment.getProperty("cache.books.max_size", Long.class, 10_000L),
+                Duration.ofSeconds(environment.getProperty("cache.books.ttl_seconds", Long.class, 600L)));
+        CaffeineCacheMetrics.monitor(meterRegistry(), cache.getNativeCache(), "books");
+        return cache;
+    }
+
+    @Bean
+    public EntityCache<Person> personCache() {
+        EntityCache<Person> cache = new EntityCache<>(environment.getProperty("cache.people.max_size", Long.class, 10_000L),
+                Duration.ofSeconds(environment.getProperty("cache.people.ttl_seconds", Long.class, 600L)));
+        CaffeineCacheMetrics.monitor(meterRegistry(), cache.getNativeCache(), "people");
+        return cache;
+    }
+
+    /**
+     * Rendered page fragments keyed by data version; see {@link FragmentCache}.
+     */
+    @Bean
+    public FragmentCache fragmentCache() {
+        FragmentCache cache = new FragmentCache(templateEngine(),
+                environment.getProperty("cache.fragments.max_size", Long.class, 10_000L));
+        CaffeineCacheMetrics.monitor(meterRegistry(), cache.getNativeCache(), "fragments");
+        return cache;
+    }
+
+    @Bean
+    public LocalValidatorFactoryBean validator() {
+        return new LocalValidatorFactoryBean();
+    }
+
+    @Override
+    public LocalValidatorFactoryBean getValidator() {
+        return validator();
+    }
+
+    @Bean
+    public DataSourceTransactionManager transactionManager() {
+        return new DataSourceTransactionManager(dataSource());
     }
 
 
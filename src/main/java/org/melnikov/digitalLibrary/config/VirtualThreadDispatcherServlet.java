@@ -0,0 +1,84 @@
+package org.melnikov.digitalLibrary.config;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DispatcherServlet} that, when {@code server.virtual_threads=true}, puts the request into async mode
+ * and runs the whole dispatch (handler, repository calls, view rendering) on a new virtual thread, so the
+ * connector thread goes straight back to the pool instead of waiting on JDBC.
+ * Concurrency is then bounded by the connection pool ({@code pool.max_size}, {@code pool.connection_timeout_ms})
+ * rather than by the connector's thread count. With the property off this is a plain {@link DispatcherServlet}.
+ *
+ * @author Nikolay Melnikov
+ */
+public class VirtualThreadDispatcherServlet extends DispatcherServlet {
+
+    private ExecutorService executor;
+
+    public VirtualThreadDispatcherServlet(WebApplicationContext webApplicationContext) {
+        super(webApplicationContext);
+    }
+
+    @Override
+    protected void initFrameworkServlet() {
+        if (getWebApplicationContext().getEnvironment().getProperty("server.virtual_threads", Boolean.class, false)) {
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("request-", 0).factory());
+            logger.info("Dispatching requests on virtual threads");
+        }
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (executor == null || request.getDispatcherType() != DispatcherType.REQUEST || !request.isAsyncSupported()) {
+            super.service(request, response);
+            return;
+        }
+        AsyncContext asyncContext = request.startAsync(request, response);
+        // same as a platform-thread request: no container timeout, long exports may stream for minutes
+        asyncContext.setTimeout(0);
+        executor.execute(() -> {
+            try {
+                super.service(request, response);
+            } catch (Exception e) {
+                logger.error("Request processing failed for " + request.getRequestURI(), e);
+                sendServerError(response);
+            } finally {
+                asyncContext.complete();
+            }
+        });
+    }
+
+    private void sendServerError(HttpServletResponse response) {
+        if (!response.isCommitted()) {
+            try {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } catch (IOException ignored) {
+                // client is gone
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.destroy();
+    }
+}
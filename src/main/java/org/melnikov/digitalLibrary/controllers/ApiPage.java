@@ -0,0 +1,30 @@
+package org.melnikov.digitalLibrary.controllers;
+
+import org.melnikov.digitalLibrary.repositories.KeysetPage;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.List;
+
+/**
+ * JSON body of a keyset page: the items plus links to the neighbouring pages, {@code null} at either end.
+ * The links repeat the request's other parameters, so size, sort and fields carry over.
+ *
+ * @author Nikolay Melnikov
+ */
+public record ApiPage<T>(List<T> items, String previous, String next) {
+
+    static <T> ApiPage<T> of(KeysetPage<T> page) {
+        String previous = page.hasPrevious() && page.firstId() != null ? link("before", page.firstId()) : null;
+        String next = page.hasNext() && page.lastId() != null ? link("after", page.lastId()) : null;
+        return new ApiPage<>(page.content(), previous, next);
+    }
+
+    private static String link(String cursor, int id) {
+        return ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("after")
+                .replaceQueryParam("before")
+                .replaceQueryParam(cursor, id)
+                .build()
+                .toUriString();
+    }
+}
@@ -0,0 +1,74 @@
+package org.melnikov.digitalLibrary.controllers;
+
+import org.melnikov.digitalLibrary.repositories.BookSort;
+import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.melnikov.digitalLibrary.repositories.ContentVersion;
+import org.melnikov.digitalLibrary.repositories.ContentVersions;
+import org.melnikov.digitalLibrary.repositories.KeysetPage;
+import org.melnikov.digitalLibrary.repositories.Projection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read-only JSON view of the catalog, paged like {@code /books}. {@code fields=title,author} narrows both the
+ * response and the SELECT; {@code id} is always included.
+ *
+ * @author Nikolay Melnikov
+ */
+@RestController
+@RequestMapping("/api/books")
+public class BooksApiController {
+
+    private final BooksRepository booksRepository;
+    private final ContentVersions contentVersions;
+
+    @Autowired
+    public BooksApiController(BooksRepository booksRepository, ContentVersions contentVersions) {
+        this.booksRepository = booksRepository;
+        this.contentVersions = contentVersions;
+    }
+
+    @GetMapping()
+    public ApiPage<Map<String, Object>> index(ServletWebRequest webRequest,
+                                              @RequestParam(value = "after", required = false) Integer after,
+                                              @RequestParam(value = "before", required = false) Integer before,
+                                              @RequestParam(value = "size", required = false) Integer size,
+                                              @RequestParam(value = "sort", required = false) String sort,
+                                              @RequestParam(value = "fields", required = false) String fields) {
+        Projection projection = projection(fields);
+        if (ConditionalGet.notModified(webRequest, contentVersions.table("book"))) {
+            return null;
+        }
+        int pageSize = KeysetPage.clampSize(size);
+        return ApiPage.of(booksRepository.findPage(after, before, pageSize, BookSort.fromParam(sort), projection));
+    }
+
+    @GetMapping("/{id}")
+    public Map<String, Object> show(@PathVariable("id") int id, ServletWebRequest webRequest,
+                                    @RequestParam(value = "fields", required = false) String fields) {
+        Projection projection = projection(fields);
+        Optional<ContentVersion> version = contentVersions.book(id);
+        if (version.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        if (ConditionalGet.notModified(webRequest, version.get())) {
+            return null;
+        }
+        return booksRepository.findById(id, projection)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    private static Projection projection(String fields) {
+        try {
+            return Projection.BOOK.select(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
@@ -1,17 +1,41 @@
 package org.melnikov.digitalLibrary.controllers;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.melnikov.digitalLibrary.cache.FragmentCache;
+import org.melnikov.digitalLibrary.export.CatalogExporter;
+import org.melnikov.digitalLibrary.export.ExportFormat;
+import org.melnikov.digitalLibrary.loans.LoanBatcher;
+import org.melnikov.digitalLibrary.loans.LoanOutcomeUnknownException;
 import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.models.BookDetails;
 import org.melnikov.digitalLibrary.models.Person;
+import org.melnikov.digitalLibrary.repositories.BookSort;
 import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.melnikov.digitalLibrary.repositories.CatalogSnapshot;
+import org.melnikov.digitalLibrary.repositories.CheckoutOutcome;
+import org.melnikov.digitalLibrary.repositories.ContentVersion;
+import org.melnikov.digitalLibrary.repositories.ContentVersions;
+import org.melnikov.digitalLibrary.repositories.KeysetPage;
 import org.melnikov.digitalLibrary.repositories.PersonRepository;
+import org.melnikov.digitalLibrary.repositories.ReturnOutcome;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author Nikolay Melnikov
@@ -19,22 +43,92 @@ import java.util.Optional;
 @Controller
 @RequestMapping("/books")
 public class BooksController {
+    static final int PATRON_SEARCH_LIMIT = 20;
+    static final int MAX_SEARCH_PAGE = 50;
+
     private final BooksRepository booksRepository;
     private final PersonRepository personRepository;
+    private final CatalogExporter catalogExporter;
+    private final CatalogSnapshot catalogSnapshot;
+    private final ContentVersions contentVersions;
+    private final FragmentCache fragmentCache;
+    private final LoanBatcher loanBatcher;
 
     @Autowired
     public BooksController(BooksRepository booksRepository,
-                           PersonRepository personRepository) {
+                           PersonRepository personRepository,
+                           CatalogExporter catalogExporter,
+                           CatalogSnapshot catalogSnapshot,
+                           ContentVersions contentVersions,
+                           FragmentCache fragmentCache,
+                           LoanBatcher loanBatcher) {
         this.booksRepository = booksRepository;
         this.personRepository = personRepository;
+        this.catalogExporter = catalogExporter;
+        this.catalogSnapshot = catalogSnapshot;
+        this.contentVersions = contentVersions;
+        this.fragmentCache = fragmentCache;
+        this.loanBatcher = loanBatcher;
     }
 
     @GetMapping()
-    public String index(Model model) {
-        model.addAttribute("books", booksRepository.findAll());
+    public String index(Model model, ServletWebRequest webRequest,
+                        @RequestParam(value = "after", required = false) Integer after,
+                        @RequestParam(value = "before", required = false) Integer before,
+                        @RequestParam(value = "size", required = false) Integer size,
+                        @RequestParam(value = "sort", required = false) String sort) {
+        if (ConditionalGet.notModified(webRequest, contentVersions.table("book"))) {
+            return null;
+        }
+        BookSort bookSort = BookSort.fromParam(sort);
+        int pageSize = KeysetPage.clampSize(size);
+        KeysetPage<Book> page = catalogSnapshot.findPage(after, before, pageSize, bookSort)
+                .orElseGet(() -> booksRepository.findPage(after, before, pageSize, bookSort));
+        model.addAttribute("books", page.content());
+        model.addAttribute("page", page);
+        model.addAttribute("size", pageSize);
+        model.addAttribute("sort", bookSort.getColumn());
         return "books/index";
     }
 
+    @GetMapping("/search")
+    public String search(@RequestParam(value = "q", defaultValue = "") String query,
+                         @RequestParam(value = "page", defaultValue = "0") int page,
+                         @RequestParam(value = "size", required = false) Integer size,
+                         ServletWebRequest webRequest,
+                         Model model) {
+        if (ConditionalGet.notModified(webRequest, contentVersions.table("book"))) {
+            return null;
+        }
+        int pageSize = KeysetPage.clampSize(size);
+        int pageNumber = Math.min(Math.max(page, 0), MAX_SEARCH_PAGE);
+        List<Book> books = query.isBlank()
+                ? List.of()
+                : booksRepository.search(query, pageNumber * pageSize, pageSize + 1);
+
+        model.addAttribute("query", query);
+        model.addAttribute("books", books.size() > pageSize ? books.subList(0, pageSize) : books);
+        model.addAttribute("page", pageNumber);
+        model.addAttribute("size", pageSize);
+        model.addAttribute("hasNext", books.size() > pageSize && pageNumber < MAX_SEARCH_PAGE);
+        return "books/search";
+    }
+
+    @GetMapping("/export")
+    public void export(@RequestParam(value = "format", defaultValue = "csv") String format,
+                       HttpServletResponse response) throws IOException {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.fromParam(format);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        response.setContentType(exportFormat.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"catalog." + exportFormat.getExtension() + "\"");
+        catalogExporter.export(exportFormat, response.getOutputStream());
+    }
+
     @GetMapping("/new")
     public String newBook(@ModelAttribute("book") Book book) {
         return "/books/new";
@@ -52,17 +146,32 @@ public class BooksController {
     }
 
     @GetMapping("/{id}")
-    public String show(@PathVariable("id") int id, Model model) {
-        Optional<Book> bookToShow = booksRepository.findById(id);
-        bookToShow.ifPresent(book -> model.addAttribute("book", book));
-        Optional <Person> bookOwner = booksRepository.getOwner(id);
-
-        if (bookOwner.isPresent()) {
-            model.addAttribute("bookOwner", bookOwner.get());
-        } else {
-            model.addAttribute("people", personRepository.findAll());
+    public String show(@PathVariable("id") int id,
+                       @RequestParam(value = "q", required = false) String patronQuery,
+                       @RequestParam(value = "checkout", required = false) CheckoutOutcome checkout,
+                       @RequestParam(value = "returned", required = false) ReturnOutcome returned,
+                       Model model, ServletWebRequest webRequest) {
+        String patronPrefix = patronQuery == null ? "" : patronQuery.trim();
+        ContentVersion patronsVersion = patronPrefix.isEmpty() ? null : contentVersions.table("person");
+        Optional<ContentVersion> version = contentVersions.book(id)
+                .map(book -> patronsVersion == null ? book : book.and(patronsVersion));
+        if (version.isPresent() && ConditionalGet.notModified(webRequest, version.get())) {
+            return null;
         }
-        model.addAttribute("person", new Person());
+        Optional<BookDetails> bookToShow = booksRepository.findDetailsById(id);
+        bookToShow.ifPresent(details -> model.addAttribute("book", details.getBook()));
+        Person bookOwner = bookToShow.map(BookDetails::getOwner).orElse(null);
+
+        if (bookOwner != null) {
+            model.addAttribute("bookOwner", bookOwner);
+        } else if (patronsVersion != null) {
+            model.addAttribute("patronQuery", patronQuery);
+            model.addAttribute("patrons", fragmentCache.render("books/patrons:" + patronPrefix, patronsVersion,
+                    "books/patrons", webRequest,
+                    () -> Map.of("people", personRepository.searchByNamePrefix(patronPrefix, PATRON_SEARCH_LIMIT))));
+        }
+        model.addAttribute("checkout", checkout);
+        model.addAttribute("returned", returned);
 
         return "books/show";
     }
@@ -91,15 +200,54 @@ public class BooksController {
     }
 
     @PatchMapping("/{id}/release")
-    public String release(@PathVariable("id") int id) {
-        booksRepository.release(id);
+    public String release(@PathVariable("id") int id, @RequestParam("personId") int personId,
+                          RedirectAttributes redirectAttributes) {
+        redirectAttributes.addAttribute("returned", loanBatcher.returnBook(id, personId));
         return "redirect:/books/" + id;
     }
 
+    /**
+     * A missing or non-numeric patron id is a 400; an unknown one comes back as
+     * {@link CheckoutOutcome#NO_SUCH_PATRON}.
+     */
     @PatchMapping("/{id}/assign")
-    public String assign(@PathVariable("id") int id, @ModelAttribute("person") Person selectedPerson) {
-        booksRepository.assign(id, selectedPerson);
+    public String assign(@PathVariable("id") int id, @RequestParam("id") Integer personId,
+                         RedirectAttributes redirectAttributes) {
+        redirectAttributes.addAttribute("checkout", loanBatcher.checkout(id, personId));
         return "redirect:/books/" + id;
     }
 
+    /**
+     * Lends several books to one patron at once, e.g. {@code POST /books/checkout?personId=7&bookId=1&bookId=2};
+     * answers with one {@code <book id> <outcome>} line per requested book.
+     */
+    @PostMapping(value = "/checkout", produces = "text/plain;charset=UTF-8")
+    @ResponseBody
+    public String checkoutAll(@RequestParam("personId") int personId, @RequestParam("bookId") List<Integer> bookIds) {
+        StringBuilder report = new StringBuilder();
+        booksRepository.checkoutAll(bookIds, personId)
+                .forEach((id, outcome) -> report.append(id).append(' ').append(outcome).append('\n'));
+        return report.toString();
+    }
+
+    /**
+     * The loan queue stayed full for the whole offer timeout: the desk should retry shortly.
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> loanQueueFull(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+
+    /**
+     * The loan's batch is still committing: the checkout or return may yet be made, so this is neither a success
+     * nor a failure to retry. 202, and the desk reloads the book page to see which way it went.
+     */
+    @ExceptionHandler(LoanOutcomeUnknownException.class)
+    public ResponseEntity<String> loanOutcomeUnknown(LoanOutcomeUnknownException e) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(e.getMessage() + "; reload /books/" + e.getBookId() + " before trying again");
+    }
+
 }
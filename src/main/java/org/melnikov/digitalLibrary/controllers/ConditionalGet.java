@@ -0,0 +1,37 @@
+package org.melnikov.digitalLibrary.controllers;
+
+import org.melnikov.digitalLibrary.repositories.ContentVersion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.Instant;
+
+/**
+ * ETag / Last-Modified handling for rendered pages and the JSON API.
+ *
+ * @author Nikolay Melnikov
+ */
+final class ConditionalGet {
+
+    /**
+     * Templates may change between deployments while the data does not, so validators from a previous run never match.
+     */
+    private static final Instant STARTED = Instant.now();
+    private static final String GENERATION = Long.toString(STARTED.toEpochMilli(), 36);
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * Sets the validators, plus {@code Cache-Control: no-cache} so caches revalidate instead of guessing freshness,
+     * and tells whether the client's copy is current. If so, the response is already a 304 and the handler
+     * should return {@code null} without building a model.
+     */
+    static boolean notModified(ServletWebRequest request, ContentVersion version) {
+        if (request.getResponse() != null) {
+            request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        }
+        Instant lastModified = version.lastModified().isAfter(STARTED) ? version.lastModified() : STARTED;
+        return request.checkNotModified("\"" + GENERATION + "-" + version.tag() + "\"", lastModified.toEpochMilli());
+    }
+}
@@ -0,0 +1,51 @@
+package org.melnikov.digitalLibrary.controllers;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.melnikov.digitalLibrary.bulk.BulkImporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+/**
+ * Bulk CSV upload: the request body is the CSV file ({@code text/csv}, with a header row) and is streamed straight into COPY.
+ *
+ * @author Nikolay Melnikov
+ */
+@Controller
+@RequestMapping("/import")
+public class ImportController {
+
+    private final BulkImporter bulkImporter;
+
+    @Autowired
+    public ImportController(BulkImporter bulkImporter) {
+        this.bulkImporter = bulkImporter;
+    }
+
+    @PostMapping(value = "/books", consumes = "text/csv", produces = MediaType.TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public String importBooks(HttpServletRequest request) throws IOException {
+        try {
+            return bulkImporter.importBooks(request.getInputStream()).toString();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @PostMapping(value = "/people", consumes = "text/csv", produces = MediaType.TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public String importPeople(HttpServletRequest request) throws IOException {
+        try {
+            return bulkImporter.importPeople(request.getInputStream()).toString();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
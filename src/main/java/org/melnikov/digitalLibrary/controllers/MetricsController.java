@@ -0,0 +1,30 @@
+package org.melnikov.digitalLibrary.controllers;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Prometheus scrape endpoint.
+ *
+ * @author Nikolay Melnikov
+ */
+@Controller
+public class MetricsController {
+
+    private final PrometheusMeterRegistry meterRegistry;
+
+    @Autowired
+    public MetricsController(PrometheusMeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @GetMapping(value = "/metrics", produces = TextFormat.CONTENT_TYPE_004)
+    @ResponseBody
+    public String metrics() {
+        return meterRegistry.scrape();
+    }
+}
@@ -0,0 +1,71 @@
+package org.melnikov.digitalLibrary.controllers;
+
+import org.melnikov.digitalLibrary.repositories.ContentVersion;
+import org.melnikov.digitalLibrary.repositories.ContentVersions;
+import org.melnikov.digitalLibrary.repositories.KeysetPage;
+import org.melnikov.digitalLibrary.repositories.PersonRepository;
+import org.melnikov.digitalLibrary.repositories.Projection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read-only JSON view of the readers, paged like {@code /people}, with {@code fields=} as in {@link BooksApiController}.
+ *
+ * @author Nikolay Melnikov
+ */
+@RestController
+@RequestMapping("/api/people")
+public class PeopleApiController {
+
+    private final PersonRepository personRepository;
+    private final ContentVersions contentVersions;
+
+    @Autowired
+    public PeopleApiController(PersonRepository personRepository, ContentVersions contentVersions) {
+        this.personRepository = personRepository;
+        this.contentVersions = contentVersions;
+    }
+
+    @GetMapping()
+    public ApiPage<Map<String, Object>> index(ServletWebRequest webRequest,
+                                              @RequestParam(value = "after", required = false) Integer after,
+                                              @RequestParam(value = "before", required = false) Integer before,
+                                              @RequestParam(value = "size", required = false) Integer size,
+                                              @RequestParam(value = "fields", required = false) String fields) {
+        Projection projection = projection(fields);
+        if (ConditionalGet.notModified(webRequest, contentVersions.table("person"))) {
+            return null;
+        }
+        int pageSize = KeysetPage.clampSize(size);
+        return ApiPage.of(personRepository.findPage(after, before, pageSize, projection));
+    }
+
+    @GetMapping("/{id}")
+    public Map<String, Object> show(@PathVariable("id") int id, ServletWebRequest webRequest,
+                                    @RequestParam(value = "fields", required = false) String fields) {
+        Projection projection = projection(fields);
+        Optional<ContentVersion> version = contentVersions.person(id);
+        if (version.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        if (ConditionalGet.notModified(webRequest, version.get())) {
+            return null;
+        }
+        return personRepository.findById(id, projection)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    private static Projection projection(String fields) {
+        try {
+            return Projection.PERSON.select(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
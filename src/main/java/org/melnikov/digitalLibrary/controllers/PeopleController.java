@@ -1,17 +1,24 @@
 package org.melnikov.digitalLibrary.controllers;
 
 import jakarta.validation.Valid;
+import org.melnikov.digitalLibrary.cache.FragmentCache;
 import org.melnikov.digitalLibrary.models.Book;
 import org.melnikov.digitalLibrary.models.Person;
+import org.melnikov.digitalLibrary.repositories.ContentVersion;
+import org.melnikov.digitalLibrary.repositories.ContentVersions;
+import org.melnikov.digitalLibrary.repositories.KeysetPage;
 import org.melnikov.digitalLibrary.repositories.PersonRepository;
 import org.melnikov.digitalLibrary.util.PersonValidator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -25,18 +32,49 @@ public class PeopleController {
 
     private final PersonValidator personValidator;
 
+    private final ContentVersions contentVersions;
+
+    private final FragmentCache fragmentCache;
+
     @Autowired
-    public PeopleController(PersonRepository personRepository, PersonValidator personValidator) {
+    public PeopleController(PersonRepository personRepository, PersonValidator personValidator,
+                            ContentVersions contentVersions, FragmentCache fragmentCache) {
         this.personRepository = personRepository;
         this.personValidator = personValidator;
+        this.contentVersions = contentVersions;
+        this.fragmentCache = fragmentCache;
     }
 
     @GetMapping()
-    public String index(Model model) {
-        model.addAttribute("people", personRepository.findAll());
+    public String index(Model model, ServletWebRequest webRequest,
+                        @RequestParam(value = "after", required = false) Integer after,
+                        @RequestParam(value = "before", required = false) Integer before,
+                        @RequestParam(value = "size", required = false) Integer size) {
+        if (ConditionalGet.notModified(webRequest, contentVersions.table("person"))) {
+            return null;
+        }
+        int pageSize = KeysetPage.clampSize(size);
+        KeysetPage<Person> page = personRepository.findPage(after, before, pageSize);
+        model.addAttribute("people", page.content());
+        model.addAttribute("page", page);
+        model.addAttribute("size", pageSize);
         return "people/index";
     }
 
+    @GetMapping("/search")
+    public String search(@RequestParam(value = "q", defaultValue = "") String query,
+                         @RequestParam(value = "limit", defaultValue = "20") int limit,
+                         Model model, ServletWebRequest webRequest) {
+        if (ConditionalGet.notModified(webRequest, contentVersions.table("person"))) {
+            return null;
+        }
+        model.addAttribute("query", query);
+        model.addAttribute("people", query.isBlank()
+                ? List.of()
+                : personRepository.searchByNamePrefix(query.trim(), Math.min(Math.max(limit, 1), 100)));
+        return "people/search";
+    }
+
     @GetMapping("/new")
     public String newPerson(@ModelAttribute("person") Person person) {
         return "/people/new";
@@ -50,15 +88,29 @@ public class PeopleController {
             return "people/new";
         }
 
-        personRepository.save(person);
+        try {
+            personRepository.save(person);
+        } catch (DuplicateKeyException e) {
+            // taken after validation, e.g. through another instance; the unique constraint has the last word
+            bindingResult.rejectValue("fullName", "error.person.exists", "Person with this name already exists");
+            return "people/new";
+        }
         return "redirect:/people";
     }
 
     @GetMapping("/{id}")
-    public String show(@PathVariable("id") int id, Model model) {
+    public String show(@PathVariable("id") int id, Model model, ServletWebRequest webRequest) {
+        Optional<ContentVersion> version = contentVersions.person(id);
+        if (version.isPresent() && ConditionalGet.notModified(webRequest, version.get())) {
+            return null;
+        }
         Optional<Person> personToShow = personRepository.findById(id);
         personToShow.ifPresent(person -> model.addAttribute("person", person));
-        personToShow.ifPresent(person -> model.addAttribute("books", personRepository.getBooksByPersonId(id)));
+        if (personToShow.isPresent() && version.isPresent()) {
+            model.addAttribute("books", fragmentCache.render("people/books:" + id, version.get(), "people/books", webRequest,
+                    () -> Map.of("books", personRepository.getBooksByPersonId(id),
+                            "overdue", personRepository.getOverdueBooksByPersonId(id))));
+        }
         return "people/show";
     }
 
@@ -75,7 +127,12 @@ public class PeopleController {
         if (bindingResult.hasErrors()) {
             return "people/edit";
         }
-        personRepository.update(id, person);
+        try {
+            personRepository.update(id, person);
+        } catch (DuplicateKeyException e) {
+            bindingResult.rejectValue("fullName", "error.person.exists", "Person with this name already exists");
+            return "people/edit";
+        }
         return "redirect:/people";
     }
 
@@ -0,0 +1,143 @@
+package org.melnikov.digitalLibrary.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections for read-only queries: taken round-robin from the healthy replicas, from the primary when there
+ * are none, when every replica refuses, or while the current request is pinned to the primary.
+ * <p>
+ * A replica that fails to hand out a connection is skipped until the periodic health check finds it valid again.
+ * Within a request (see {@link ReadYourWritesInterceptor}) all reads stay on the first replica used, so a version
+ * read early in the request is never newer than the content read after it.
+ *
+ * @author Nikolay Melnikov
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final ThreadLocal<Route> ROUTE = new ThreadLocal<>();
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthCheck;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Duration healthCheckInterval) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        if (this.replicas.isEmpty()) {
+            this.healthCheck = null;
+        } else {
+            this.healthCheck = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                    .name("replica-health-check").daemon().factory());
+            this.healthCheck.scheduleWithFixedDelay(this::checkHealth, healthCheckInterval.toMillis(),
+                    healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts routing for the current request; {@code primaryOnly} sends all of its reads to the primary.
+     */
+    public static void beginRequest(boolean primaryOnly) {
+        Route route = new Route();
+        route.primaryOnly = primaryOnly;
+        ROUTE.set(route);
+    }
+
+    public static void endRequest() {
+        ROUTE.remove();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Route route = ROUTE.get();
+        if (route != null && route.primaryOnly) {
+            return primary.getConnection();
+        }
+        if (route != null && route.replica != null) {
+            Connection connection = connect(route.replica);
+            if (connection != null) {
+                return connection;
+            }
+        } else {
+            for (int attempt = 0; attempt < replicas.size(); attempt++) {
+                Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+                Connection connection = replica.healthy ? connect(replica) : null;
+                if (connection != null) {
+                    if (route != null) {
+                        route.replica = replica;
+                    }
+                    return connection;
+                }
+            }
+        }
+        if (route != null) {
+            route.primaryOnly = true;
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    public int healthyReplicas() {
+        return (int) replicas.stream().filter(replica -> replica.healthy).count();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (healthCheck != null) {
+            healthCheck.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private Connection connect(Replica replica) {
+        try {
+            return replica.dataSource.getConnection();
+        } catch (SQLException e) {
+            replica.healthy = false;
+            return null;
+        }
+    }
+
+    private void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                replica.healthy = connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException | RuntimeException e) {
+                replica.healthy = false;
+            }
+        }
+    }
+
+    private static final class Replica {
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+
+    private static final class Route {
+        private boolean primaryOnly;
+        private Replica replica;
+    }
+}
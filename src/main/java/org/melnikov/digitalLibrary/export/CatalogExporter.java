@@ -0,0 +1,159 @@
+package org.melnikov.digitalLibrary.export;
+
+import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes the catalog (books with their current holders) straight from a database cursor to an output stream,
+ * so memory use does not depend on the size of the table.
+ *
+ * @author Nikolay Melnikov
+ */
+@Component
+public class CatalogExporter {
+
+    static final int FETCH_SIZE = 1000;
+
+    private static final String CSV_HEADER = "id,title,author,year_of_publication,person_id,person_full_name\n";
+
+    private final BooksRepository booksRepository;
+
+    @Autowired
+    public CatalogExporter(BooksRepository booksRepository) {
+        this.booksRepository = booksRepository;
+    }
+
+    public void export(ExportFormat format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+        }
+        try {
+            booksRepository.streamWithOwners(FETCH_SIZE, new RowWriter(format, writer));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private static class RowWriter implements RowCallbackHandler {
+        private final ExportFormat format;
+        private final Writer writer;
+        private boolean firstRow = true;
+
+        RowWriter(ExportFormat format, Writer writer) {
+            this.format = format;
+            this.writer = writer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            int id = rs.getInt("id");
+            String title = rs.getString("title");
+            String author = rs.getString("author");
+            Integer year = rs.getObject("year_of_publication", Integer.class);
+            Integer personId = rs.getObject("person_id", Integer.class);
+            String personName = rs.getString("full_name");
+            try {
+                if (format == ExportFormat.CSV) {
+                    writeCsv(id, title, author, year, personId, personName);
+                } else {
+                    writeJson(id, title, author, year, personId, personName);
+                }
+                if (firstRow) {
+                    // push headers and the first row out right away instead of waiting for a full buffer
+                    writer.flush();
+                    firstRow = false;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeCsv(int id, String title, String author, Integer year,
+                              Integer personId, String personName) throws IOException {
+            writer.write(Integer.toString(id));
+            writer.write(',');
+            writeCsvField(title);
+            writer.write(',');
+            writeCsvField(author);
+            writer.write(',');
+            writer.write(year == null ? "" : year.toString());
+            writer.write(',');
+            writer.write(personId == null ? "" : personId.toString());
+            writer.write(',');
+            writeCsvField(personName);
+            writer.write('\n');
+        }
+
+        private void writeCsvField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        private void writeJson(int id, String title, String author, Integer year,
+                               Integer personId, String personName) throws IOException {
+            writer.write("{\"id\":");
+            writer.write(Integer.toString(id));
+            writer.write(",\"title\":");
+            writeJsonString(title);
+            writer.write(",\"author\":");
+            writeJsonString(author);
+            writer.write(",\"yearOfPublication\":");
+            writer.write(year == null ? "null" : year.toString());
+            writer.write(",\"personId\":");
+            writer.write(personId == null ? "null" : personId.toString());
+            writer.write(",\"personFullName\":");
+            writeJsonString(personName);
+            writer.write("}\n");
+        }
+
+        private void writeJsonString(String value) throws IOException {
+            if (value == null) {
+                writer.write("null");
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> writer.write("\\\"");
+                    case '\\' -> writer.write("\\\\");
+                    case '\n' -> writer.write("\\n");
+                    case '\r' -> writer.write("\\r");
+                    case '\t' -> writer.write("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            writer.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            writer.write(c);
+                        }
+                    }
+                }
+            }
+            writer.write('"');
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.melnikov.digitalLibrary.export;
+
+/**
+ * @author Nikolay Melnikov
+ */
+public enum ExportFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static ExportFormat fromParam(String param) {
+        for (ExportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(param)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported export format: " + param);
+    }
+}
@@ -0,0 +1,250 @@
+package org.melnikov.digitalLibrary.loans;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.melnikov.digitalLibrary.repositories.CheckoutOutcome;
+import org.melnikov.digitalLibrary.repositories.ReturnOutcome;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Checkout and return for single books, optionally group-committed.
+ * <p>
+ * When enabled, callers enqueue their operation and wait; a flusher thread runs up to {@code maxBatch} queued
+ * operations in one transaction, after waiting at most {@code maxDelay} for the batch to fill. Each caller gets
+ * its outcome only after that transaction has committed, so an acknowledged checkout is as durable as a direct
+ * one. If any operation of a batch fails, the batch is rolled back and its operations are retried one by one,
+ * so a failure only reaches the caller that caused it. Within a batch, books are locked in id order, like
+ * {@link BooksRepository#checkoutAll} locks them, so a batch and a multi-book checkout cannot deadlock.
+ * <p>
+ * A full queue blocks callers for up to {@code offerTimeout} and then rejects them with
+ * {@link RejectedExecutionException}. An operation not picked up within {@code maxDelay} plus {@code offerTimeout}
+ * is withdrawn and rejected the same way. Once picked up, its caller waits up to {@code resultTimeout} for the
+ * batch to commit, which should comfortably exceed the slowest expected flush; past it the operation may still
+ * commit, and the caller gets a {@link LoanOutcomeUnknownException} rather than a failure. Once the batcher is
+ * closed, or its flusher has died, queued operations are rejected rather than left waiting.
+ * Disabled, every call goes straight to {@link BooksRepository}.
+ *
+ * @author Nikolay Melnikov
+ */
+public class LoanBatcher implements AutoCloseable {
+
+    private final BooksRepository booksRepository;
+    private final TransactionTemplate transaction;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final long offerTimeoutNanos;
+    private final long pickupTimeoutNanos;
+    private final long resultTimeoutNanos;
+    private final BlockingQueue<Pending<?>> queue;
+    private final Thread flusher;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+
+    private volatile boolean closed;
+
+    public LoanBatcher(BooksRepository booksRepository, PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry, boolean enabled, int queueCapacity, int maxBatch,
+                       Duration maxDelay, Duration offerTimeout, Duration resultTimeout) {
+        this.booksRepository = booksRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.pickupTimeoutNanos = maxDelayNanos + offerTimeoutNanos;
+        this.resultTimeoutNanos = resultTimeout.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushTimer = Timer.builder("loans.flush")
+                .description("Time to run and commit one batch of checkouts and returns")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("loans.flush.size")
+                .description("Operations per committed batch")
+                .register(meterRegistry);
+        Gauge.builder("loans.queue.depth", queue, BlockingQueue::size)
+                .description("Checkouts and returns waiting for the next batch")
+                .register(meterRegistry);
+        if (enabled) {
+            this.flusher = Thread.ofPlatform().name("loan-batcher").daemon().start(this::run);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public CheckoutOutcome checkout(int bookId, int personId) {
+        return submit(bookId, () -> booksRepository.checkout(bookId, personId));
+    }
+
+    public ReturnOutcome returnBook(int bookId, int personId) {
+        return submit(bookId, () -> booksRepository.returnBook(bookId, personId));
+    }
+
+    /**
+     * Stops accepting operations and commits the ones already queued; whatever is still queued once the flusher
+     * has stopped, or after waiting 10 seconds for it, is rejected.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        if (flusher != null) {
+            flusher.interrupt();
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+            rejectQueued();
+        }
+    }
+
+    private <T> T submit(int bookId, Supplier<T> operation) {
+        if (!enabled) {
+            return operation.get();
+        }
+        Pending<T> pending = new Pending<>(bookId, operation, new CompletableFuture<>());
+        try {
+            if (closed || !queue.offer(pending, offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new RejectedExecutionException("Loan queue is full");
+            }
+            // closed meanwhile: the flusher may already have taken its last look at the queue
+            if (closed && queue.remove(pending)) {
+                throw new RejectedExecutionException("Loan queue is closed");
+            }
+            return await(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the loan batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private <T> T await(Pending<T> pending) throws InterruptedException, ExecutionException {
+        try {
+            return pending.result().get(pickupTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (queue.remove(pending)) {
+                throw new RejectedExecutionException("Loan batch did not start in time");
+            }
+        }
+        try {
+            return pending.result().get(resultTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new LoanOutcomeUnknownException(pending.bookId());
+        }
+    }
+
+    private void run() {
+        try {
+            batchUntilClosed();
+        } finally {
+            // also when a flush failed with an Error: nothing would take the queue any more
+            closed = true;
+            rejectQueued();
+        }
+    }
+
+    private void batchUntilClosed() {
+        List<Pending<?>> batch = new ArrayList<>(maxBatch);
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    if (queue.drainTo(batch, maxBatch - batch.size()) == 0) {
+                        Pending<?> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                closed = true;
+            }
+            flush(batch);
+            batch.clear();
+        }
+        queue.drainTo(batch);
+        flush(batch);
+    }
+
+    private void rejectQueued() {
+        for (Pending<?> queued = queue.poll(); queued != null; queued = queue.poll()) {
+            queued.result().completeExceptionally(new RejectedExecutionException("Loan queue is closed"));
+        }
+    }
+
+    private void flush(List<Pending<?>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        flushSize.record(batch.size());
+        // stable: operations on the same book keep their arrival order
+        batch.sort(Comparator.comparingInt(Pending::bookId));
+        try {
+            flushTimer.record(() -> flushSorted(batch));
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        } catch (Error e) {
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+            throw e;
+        }
+    }
+
+    private void flushSorted(List<Pending<?>> batch) {
+        if (batch.size() == 1) {
+            batch.get(0).runAlone();
+            return;
+        }
+        List<Object> results;
+        try {
+            results = transaction.execute(status -> {
+                List<Object> values = new ArrayList<>(batch.size());
+                for (Pending<?> pending : batch) {
+                    values.add(pending.operation().get());
+                }
+                return values;
+            });
+        } catch (RuntimeException e) {
+            batch.forEach(Pending::runAlone);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+
+    private record Pending<T>(int bookId, Supplier<T> operation, CompletableFuture<T> result) {
+
+        @SuppressWarnings("unchecked")
+        void complete(Object value) {
+            result.complete((T) value);
+        }
+
+        void runAlone() {
+            try {
+                result.complete(operation.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
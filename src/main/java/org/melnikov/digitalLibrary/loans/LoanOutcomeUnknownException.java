@@ -0,0 +1,23 @@
+package org.melnikov.digitalLibrary.loans;
+
+import org.springframework.dao.QueryTimeoutException;
+
+/**
+ * The batch holding a checkout or return was still running when its caller stopped waiting: the operation may yet
+ * commit, so it must not be reported as failed.
+ *
+ * @author Nikolay Melnikov
+ */
+public class LoanOutcomeUnknownException extends QueryTimeoutException {
+
+    private final int bookId;
+
+    public LoanOutcomeUnknownException(int bookId) {
+        super("Loan batch for book " + bookId + " did not commit in time, the outcome is unknown");
+        this.bookId = bookId;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+}
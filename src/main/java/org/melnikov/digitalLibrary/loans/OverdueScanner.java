@@ -0,0 +1,54 @@
+package org.melnikov.digitalLibrary.loans;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports loans that became overdue since the previous run: logs an {@code OVERDUE} event per loan and bumps
+ * the book's version, so pages showing it revalidate. Progress is kept in {@code overdue_scan}, so only the
+ * slice of {@code book_open_loans_due_idx} between the last run and now is read, and a restart neither
+ * repeats nor skips loans. The row lock on {@code overdue_scan} serializes scanners of several instances.
+ *
+ * @author Nikolay Melnikov
+ */
+@Component
+public class OverdueScanner {
+
+    private static final int PARTITION_MONTHS_AHEAD = 2;
+
+    private static final String SCAN_SQL =
+            "WITH scan AS (SELECT scanned_until FROM overdue_scan FOR UPDATE), " +
+                    "overdue AS (SELECT book.id, book.person_id, book.due_at FROM book, scan " +
+                    "WHERE book.person_id IS NOT NULL AND book.due_at > scan.scanned_until AND book.due_at <= now()), " +
+                    "logged AS (INSERT INTO loan_event (book_id, person_id, event_type, due_at) " +
+                    "SELECT id, person_id, 'OVERDUE', due_at FROM overdue), " +
+                    "bumped AS (UPDATE book SET version = book.version + 1, updated_at = now() FROM overdue " +
+                    "WHERE book.id = overdue.id), " +
+                    "advanced AS (UPDATE overdue_scan SET scanned_until = now()) " +
+                    "SELECT count(*) FROM overdue";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter overdueLoans;
+
+    @Autowired
+    public OverdueScanner(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.overdueLoans = Counter.builder("loans.overdue")
+                .description("Loans reported overdue by the scanner")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Also creates the {@code loan_event} partitions for the coming months, ahead of the first row that needs them.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${loans.overdue_scan_ms:60000}")
+    public void scan() {
+        jdbcTemplate.queryForObject("SELECT create_loan_event_partitions(?)", Object.class, PARTITION_MONTHS_AHEAD);
+        Long reported = jdbcTemplate.queryForObject(SCAN_SQL, Long.class);
+        overdueLoans.increment(reported == null ? 0 : reported);
+    }
+}
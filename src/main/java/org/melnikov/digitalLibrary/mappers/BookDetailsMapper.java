@@ -0,0 +1,34 @@
+package org.melnikov.digitalLibrary.mappers;
+
+import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.models.BookDetails;
+import org.melnikov.digitalLibrary.models.Person;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the book columns left-joined with the holder's {@code full_name} and {@code year_of_birth}.
+ *
+ * @author Nikolay Melnikov
+ */
+public class BookDetailsMapper implements RowMapper<BookDetails> {
+
+    private final BookMapper bookMapper = new BookMapper();
+
+    @Override
+    public BookDetails mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Book book = bookMapper.mapRow(rs, rowNum);
+        Person owner = null;
+
+        if (book.getPersonId() != null) {
+            owner = new Person();
+            owner.setId(book.getPersonId());
+            owner.setFullName(rs.getString("full_name"));
+            owner.setYearOfBirth(rs.getObject("year_of_birth", Integer.class));
+        }
+
+        return new BookDetails(book, owner);
+    }
+}
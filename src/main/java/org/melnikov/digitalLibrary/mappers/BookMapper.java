@@ -20,6 +20,7 @@ public class BookMapper implements RowMapper<Book> {
         book.setTitle(rs.getString("title"));
         book.setAuthor(rs.getString("author"));
         book.setYearOfPublication(rs.getInt("year_of_publication"));
+        book.setPersonId(rs.getObject("person_id", Integer.class));
 
         return book;
     }
@@ -0,0 +1,52 @@
+package org.melnikov.digitalLibrary.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records request latency per controller handler method and response status as {@code http_handler_seconds}.
+ *
+ * @author Nikolay Melnikov
+ */
+public class HandlerMetricsInterceptor implements HandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = HandlerMetricsInterceptor.class.getName() + ".start";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public HandlerMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(handler instanceof HandlerMethod handlerMethod)
+                || !(request.getAttribute(START_ATTRIBUTE) instanceof Long start)) {
+            return;
+        }
+        String name = handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+        String status = ex != null && response.getStatus() < 400 ? "500" : Integer.toString(response.getStatus());
+        timers.computeIfAbsent(name + ' ' + status, key -> Timer.builder("http.handler")
+                        .description("Request latency per controller handler")
+                        .tag("handler", name)
+                        .tag("status", status)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
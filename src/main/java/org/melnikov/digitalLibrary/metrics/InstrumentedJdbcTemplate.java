@@ -0,0 +1,196 @@
+package org.melnikov.digitalLibrary.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.jdbc.support.KeyHolder;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * {@link JdbcTemplate} that records, per SQL string, a latency histogram ({@code db_query_seconds}),
+ * the rows returned or affected ({@code db_query_rows}) and failures ({@code db_query_errors_total}).
+ * <p>
+ * Overrides the narrowest public/protected entry points every {@code query}/{@code update}/{@code batchUpdate}
+ * overload funnels into; every query, row callbacks included, ends in one of the two {@code ResultSetExtractor}
+ * overrides and is recorded once, with the rows its result set actually yielded. Meters are resolved once per SQL
+ * string and then read from a local map.
+ *
+ * @author Nikolay Melnikov
+ */
+public class InstrumentedJdbcTemplate extends JdbcTemplate {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, QueryMeters> meters = new ConcurrentHashMap<>();
+
+    public InstrumentedJdbcTemplate(DataSource dataSource, MeterRegistry meterRegistry) {
+        super(dataSource);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse)
+            throws DataAccessException {
+        CountingResultSetExtractor<T> counting = new CountingResultSetExtractor<>(rse);
+        return record(sqlOf(psc), () -> super.query(psc, pss, counting), result -> counting.rows);
+    }
+
+    @Override
+    public <T> T query(String sql, ResultSetExtractor<T> rse) throws DataAccessException {
+        CountingResultSetExtractor<T> counting = new CountingResultSetExtractor<>(rse);
+        return record(sql, () -> super.query(sql, counting), result -> counting.rows);
+    }
+
+    @Override
+    protected int update(PreparedStatementCreator psc, PreparedStatementSetter pss) throws DataAccessException {
+        return record(sqlOf(psc), () -> super.update(psc, pss));
+    }
+
+    @Override
+    public int update(PreparedStatementCreator psc, KeyHolder generatedKeyHolder) throws DataAccessException {
+        return record(sqlOf(psc), () -> super.update(psc, generatedKeyHolder));
+    }
+
+    @Override
+    public int update(String sql) throws DataAccessException {
+        return record(sql, () -> super.update(sql));
+    }
+
+    @Override
+    public void execute(String sql) throws DataAccessException {
+        record(sql, () -> {
+            super.execute(sql);
+            return null;
+        });
+    }
+
+    @Override
+    public <T> T execute(String sql, PreparedStatementCallback<T> action) throws DataAccessException {
+        return record(sql, () -> super.execute(sql, action));
+    }
+
+    @Override
+    public <T> T execute(PreparedStatementCreator psc, PreparedStatementCallback<T> action) throws DataAccessException {
+        return record(sqlOf(psc), () -> super.execute(psc, action));
+    }
+
+    private <T> T record(String sql, Supplier<T> call) {
+        return record(sql, call, InstrumentedJdbcTemplate::rowCount);
+    }
+
+    private <T> T record(String sql, Supplier<T> call, ToLongFunction<? super T> rowCount) {
+        QueryMeters queryMeters = meters(sql);
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            queryMeters.rows.record(rowCount.applyAsLong(result));
+            return result;
+        } catch (RuntimeException e) {
+            queryMeters.errors.increment();
+            throw e;
+        } finally {
+            queryMeters.latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private QueryMeters meters(String sql) {
+        QueryMeters queryMeters = meters.get(sql);
+        if (queryMeters == null) {
+            queryMeters = meters.computeIfAbsent(sql, key -> new QueryMeters(meterRegistry, normalize(key)));
+        }
+        return queryMeters;
+    }
+
+    /**
+     * Rows affected, from what {@code update}, {@code batchUpdate} and {@code execute} return.
+     */
+    private static long rowCount(Object result) {
+        if (result instanceof Integer count) {
+            return count;
+        }
+        if (result instanceof int[] counts) {
+            long total = 0;
+            for (int count : counts) {
+                total += Math.max(count, 0);
+            }
+            return total;
+        }
+        if (result instanceof int[][] batches) {
+            long total = 0;
+            for (int[] counts : batches) {
+                total += rowCount(counts);
+            }
+            return total;
+        }
+        return 0;
+    }
+
+    private static String sqlOf(Object statementCreator) {
+        return statementCreator instanceof SqlProvider provider && provider.getSql() != null
+                ? provider.getSql()
+                : statementCreator.getClass().getName();
+    }
+
+    private static String normalize(String sql) {
+        return sql.replaceAll("\\s+", " ").trim();
+    }
+
+    private static final class QueryMeters {
+        private final Timer latency;
+        private final DistributionSummary rows;
+        private final Counter errors;
+
+        QueryMeters(MeterRegistry registry, String query) {
+            this.latency = Timer.builder("db.query")
+                    .description("JdbcTemplate statement latency")
+                    .tag("query", query)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.rows = DistributionSummary.builder("db.query.rows")
+                    .description("Rows returned or affected per statement")
+                    .tag("query", query)
+                    .register(registry);
+            this.errors = Counter.builder("db.query.errors")
+                    .description("Statements that failed")
+                    .tag("query", query)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Counts the rows the delegate reads, whatever it builds from them: a list, a map or a single outcome.
+     */
+    private static final class CountingResultSetExtractor<T> implements ResultSetExtractor<T> {
+        private final ResultSetExtractor<T> delegate;
+        private long rows;
+
+        CountingResultSetExtractor(ResultSetExtractor<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public T extractData(ResultSet rs) throws SQLException, DataAccessException {
+            CountingResultSet counting = new CountingResultSet(rs);
+            try {
+                return delegate.extractData(counting);
+            } finally {
+                rows = counting.rows();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.melnikov.digitalLibrary.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A book together with the person currently holding it ({@code owner} is {@code null} when the book is free).
+ */
+@Getter
+@AllArgsConstructor
+public class BookDetails {
+    private final Book book;
+    private final Person owner;
+}
@@ -0,0 +1,32 @@
+package org.melnikov.digitalLibrary.repositories;
+
+/**
+ * Orderings supported by {@link BooksRepository#findPage}. Title and author sort by code point, not by the
+ * database locale: upper case before lower case, and e.g. {@code Ё} before {@code А}.
+ *
+ * @author Nikolay Melnikov
+ */
+public enum BookSort {
+    ID("id"),
+    TITLE("title"),
+    AUTHOR("author");
+
+    private final String column;
+
+    BookSort(String column) {
+        this.column = column;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public static BookSort fromParam(String param) {
+        for (BookSort sort : values()) {
+            if (sort.column.equalsIgnoreCase(param)) {
+                return sort;
+            }
+        }
+        return ID;
+    }
+}
@@ -1,20 +1,34 @@
 package org.melnikov.digitalLibrary.repositories;
 
+import org.melnikov.digitalLibrary.cache.EntityCache;
+import org.melnikov.digitalLibrary.mappers.BookDetailsMapper;
 import org.melnikov.digitalLibrary.mappers.BookMapper;
 import org.melnikov.digitalLibrary.mappers.PersonMapper;
 import org.melnikov.digitalLibrary.models.Book;
+import org.melnikov.digitalLibrary.models.BookDetails;
 import org.melnikov.digitalLibrary.models.Person;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.repository.ListCrudRepository;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlProvider;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -23,65 +37,243 @@ import java.util.Optional;
 @Component
 public class BooksRepository implements ListCrudRepository<Book, Integer> {
 
+    /**
+     * Columns read by {@link BookMapper}; {@code SELECT *} would also drag along {@code search_vector}.
+     */
+    static final String COLUMNS = "id, title, author, year_of_publication, person_id";
+
+    static final int INSERT_CHUNK_SIZE = 1000;
+
+    static final int LOAN_PERIOD_DAYS = 14;
+
+    /**
+     * Locks the requested rows in id order (so concurrent batches cannot deadlock), lends out the free ones,
+     * logs a {@code CHECKOUT} event for each and returns, per found book, the holder before the statement
+     * and whether it changed. An unknown patron changes nothing, rather than failing on the foreign key, which would
+     * abort a surrounding batch transaction; the patron row is key-share locked so it cannot be deleted meanwhile.
+     */
+    private static final String CHECKOUT_SQL =
+            "WITH target AS (SELECT id, person_id FROM book WHERE id = ANY (?) ORDER BY id FOR UPDATE), " +
+                    "patron AS (SELECT id FROM person WHERE id = ? FOR KEY SHARE), " +
+                    "changed AS (UPDATE book SET person_id = patron.id, due_at = now() + make_interval(days => ?), " +
+                    "version = book.version + 1, updated_at = now() FROM target, patron " +
+                    "WHERE book.id = target.id AND target.person_id IS NULL " +
+                    "RETURNING book.id, book.person_id, book.due_at), " +
+                    "logged AS (INSERT INTO loan_event (book_id, person_id, event_type, due_at) " +
+                    "SELECT id, person_id, 'CHECKOUT', due_at FROM changed) " +
+                    "SELECT target.id, target.person_id, changed.id IS NOT NULL AS changed " +
+                    "FROM target LEFT JOIN changed ON changed.id = target.id";
+
     private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final EntityCache<Book> bookCache;
+    private final EntityCache<Person> personCache;
+    private final CatalogSnapshot catalogSnapshot;
 
     @Autowired
-    public BooksRepository(JdbcTemplate jdbcTemplate) {
+    public BooksRepository(JdbcTemplate jdbcTemplate,
+                           @Qualifier("replicaJdbcTemplate") JdbcTemplate replicaJdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           EntityCache<Book> bookCache, EntityCache<Person> personCache,
+                           CatalogSnapshot catalogSnapshot) {
         this.jdbcTemplate = jdbcTemplate;
+        this.replicaJdbcTemplate = replicaJdbcTemplate;
+        this.bookCache = bookCache;
+        this.personCache = personCache;
+        this.catalogSnapshot = catalogSnapshot;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     @Override
     public <S extends Book> S save(S book) {
-        jdbcTemplate.update("INSERT INTO book (title, author, year_of_publication) VALUES(?,?,?)",
-                book.getTitle(), book.getAuthor(), book.getYearOfPublication());
+        book.setId(jdbcTemplate.queryForObject(
+                "INSERT INTO book (title, author, year_of_publication) VALUES(?,?,?) RETURNING id",
+                Integer.class, book.getTitle(), book.getAuthor(), book.getYearOfPublication()));
+        afterCommit(() -> catalogSnapshot.putAll(List.of(book)));
         return book;
     }
 
+    /**
+     * Inserts {@link #INSERT_CHUNK_SIZE} rows per statement and fills in the generated ids;
+     * several chunks share one transaction.
+     */
     @Override
     public <S extends Book> List<S> saveAll(Iterable<S> entities) {
-        List<S> books = new ArrayList<>((Collection<S>) entities);
-        jdbcTemplate.batchUpdate("INSERT INTO book (title, author, year_of_publication) VALUES(?,?,?)", new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                ps.setString(1, books.get(i).getTitle());
-                ps.setString(2, books.get(i).getAuthor());
-                ps.setInt(3, books.get(i).getYearOfPublication());
-            }
-
-            @Override
-            public int getBatchSize() {
-                return books.size();
-            }
-        });
+        List<S> books = new ArrayList<>();
+        entities.forEach(books::add);
+        if (books.size() <= INSERT_CHUNK_SIZE) {
+            insert(books);
+        } else {
+            transaction.executeWithoutResult(status -> {
+                for (int from = 0; from < books.size(); from += INSERT_CHUNK_SIZE) {
+                    insert(books.subList(from, Math.min(books.size(), from + INSERT_CHUNK_SIZE)));
+                }
+            });
+        }
+        afterCommit(() -> catalogSnapshot.putAll(books));
         return books;
     }
 
+    /**
+     * One multi-row insert. The rows travel as three array parameters, so the statement text is the same
+     * for any row count. Identity values are drawn in {@code ord} order, so sorted ids line up with the rows.
+     */
+    private void insert(List<? extends Book> books) {
+        if (books.isEmpty()) {
+            return;
+        }
+        String[] titles = new String[books.size()];
+        String[] authors = new String[books.size()];
+        Integer[] years = new Integer[books.size()];
+        for (int i = 0; i < books.size(); i++) {
+            titles[i] = books.get(i).getTitle();
+            authors[i] = books.get(i).getAuthor();
+            years[i] = books.get(i).getYearOfPublication();
+        }
+        List<Integer> ids = jdbcTemplate.query("INSERT INTO book (title, author, year_of_publication) " +
+                        "SELECT title, author, year_of_publication " +
+                        "FROM unnest(?::varchar[], ?::varchar[], ?::integer[]) " +
+                        "WITH ORDINALITY AS row_values(title, author, year_of_publication, ord) " +
+                        "ORDER BY ord RETURNING id",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("varchar", titles));
+                    ps.setArray(2, ps.getConnection().createArrayOf("varchar", authors));
+                    ps.setArray(3, ps.getConnection().createArrayOf("integer", years));
+                },
+                (rs, rowNum) -> rs.getInt(1));
+        ids.sort(null);
+        for (int i = 0; i < books.size(); i++) {
+            books.get(i).setId(ids.get(i));
+        }
+    }
+
     public void update(int id, Book updatedBook) {
-        jdbcTemplate.update("UPDATE book SET title =?, author = ?, year_of_publication = ? WHERE id = ?",
+        jdbcTemplate.update("UPDATE book SET title =?, author = ?, year_of_publication = ?, " +
+                        "version = version + 1, updated_at = now() WHERE id = ?",
                 updatedBook.getTitle(), updatedBook.getAuthor(), updatedBook.getYearOfPublication(), id);
+        bookCache.invalidate(id);
+        afterCommit(() -> catalogSnapshot.put(id, updatedBook.getTitle(), updatedBook.getAuthor(),
+                updatedBook.getYearOfPublication()));
     }
 
     @Override
     public List<Book> findAll() {
-        return jdbcTemplate.query("SELECT * FROM book", new BookMapper());
+        return replicaJdbcTemplate.query("SELECT " + COLUMNS + " FROM book", new BookMapper());
+    }
+
+    /**
+     * Keyset pagination: pass {@code after} for the next page or {@code before} for the previous one.
+     */
+    public KeysetPage<Book> findPage(Integer after, Integer before, int size, BookSort sort) {
+        Integer cursor = before != null ? before : after;
+        String sql = KeysetPage.sql("book", COLUMNS, sort.getColumn(), cursor != null, before != null);
+        Object[] args = cursor != null ? new Object[]{cursor, size + 1} : new Object[]{size + 1};
+        List<Book> rows = replicaJdbcTemplate.query(sql, new BookMapper(), args);
+        return KeysetPage.of(rows, size, after, before, Book::getId);
+    }
+
+    /**
+     * Same page as {@link #findPage}, selecting only the projected columns.
+     */
+    public KeysetPage<Map<String, Object>> findPage(Integer after, Integer before, int size, BookSort sort,
+                                                    Projection projection) {
+        Integer cursor = before != null ? before : after;
+        String sql = KeysetPage.sql("book", projection.selectList(), sort.getColumn(), cursor != null, before != null);
+        Object[] args = cursor != null ? new Object[]{cursor, size + 1} : new Object[]{size + 1};
+        List<Map<String, Object>> rows = replicaJdbcTemplate.query(sql, projection.rowMapper(), args);
+        return KeysetPage.of(rows, size, after, before, Projection::id);
+    }
+
+    public Optional<Map<String, Object>> findById(int id, Projection projection) {
+        return replicaJdbcTemplate.query("SELECT " + projection.selectList() + " FROM book WHERE id = ?",
+                        projection.rowMapper(), id)
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Streams every book joined with its current holder to {@code handler}, one row at a time.
+     * The PostgreSQL driver only uses a server-side cursor when auto-commit is off, hence the transaction;
+     * {@code fetchSize} bounds how many rows are held in memory at once.
+     */
+    public void streamWithOwners(int fetchSize, RowCallbackHandler handler) {
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(new CursorStatementCreator(
+                "SELECT book.id, book.title, book.author, book.year_of_publication, " +
+                        "person.id AS person_id, person.full_name " +
+                        "FROM book LEFT JOIN person ON book.person_id = person.id ORDER BY book.id",
+                fetchSize), handler));
+    }
+
+    /**
+     * Ranked full-text search over title (weighted higher) and author, backed by the indexed
+     * {@code search_vector} column. {@code query} uses web search syntax: words, "phrases", or, -exclusions.
+     */
+    public List<Book> search(String query, int offset, int limit) {
+        return replicaJdbcTemplate.query("SELECT " + COLUMNS + " FROM book, websearch_to_tsquery('simple', ?) query " +
+                        "WHERE search_vector @@ query " +
+                        "ORDER BY ts_rank(search_vector, query) DESC, id LIMIT ? OFFSET ?",
+                new BookMapper(), query, limit, offset);
     }
 
     @Override
     public List<Book> findAllById(Iterable<Integer> ints) {
-
-        return jdbcTemplate.query("SELECT * FROM book WHERE id =?", new BookMapper(), ints);
+        return IdArrays.query(replicaJdbcTemplate, "SELECT " + COLUMNS + " FROM book WHERE id = ANY (?) ORDER BY id",
+                new BookMapper(), ints);
     }
 
+    /**
+     * Read from the primary: a lagging replica could put a just-overwritten row back into the cache.
+     */
     @Override
     public Optional<Book> findById(Integer id) {
-        return jdbcTemplate.query("SELECT * FROM book WHERE id = ?", new BookMapper(), id)
+        return bookCache.get(id, key -> jdbcTemplate.query("SELECT " + COLUMNS + " FROM book WHERE id = ?", new BookMapper(), key)
+                .stream()
+                .findFirst());
+    }
+
+    /**
+     * The book and its current holder: served from the entity caches when both are there,
+     * otherwise loaded with one joined query that also warms the caches, unless a write invalidated either cache
+     * meanwhile. Like {@link #findById}, it reads from the primary so the caches never take in rows older than their
+     * last invalidation.
+     */
+    public Optional<BookDetails> findDetailsById(int id) {
+        Optional<Book> cachedBook = bookCache.getIfPresent(id);
+        if (cachedBook.isPresent()) {
+            Book book = cachedBook.get();
+            if (book.getPersonId() == null) {
+                return Optional.of(new BookDetails(book, null));
+            }
+            Optional<Person> cachedOwner = personCache.getIfPresent(book.getPersonId());
+            if (cachedOwner.isPresent()) {
+                return Optional.of(new BookDetails(book, cachedOwner.get()));
+            }
+        }
+
+        long bookStamp = bookCache.stamp();
+        long personStamp = personCache.stamp();
+        Optional<BookDetails> details = jdbcTemplate.query("SELECT book.id, book.title, book.author, book.year_of_publication, book.person_id, " +
+                                "person.full_name, person.year_of_birth FROM book " +
+                                "LEFT JOIN person ON book.person_id = person.id WHERE book.id = ?",
+                        new BookDetailsMapper(), id)
                 .stream()
                 .findFirst();
+        details.ifPresent(found -> {
+            bookCache.putIfNotInvalidatedSince(bookStamp, id, found.getBook());
+            if (found.getOwner() != null) {
+                personCache.putIfNotInvalidatedSince(personStamp, found.getOwner().getId(), found.getOwner());
+            }
+        });
+        return details;
     }
 
     @Override
     public boolean existsById(Integer id) {
-        return jdbcTemplate.query("SELECT * FROM book WHERE id = ?", new BookMapper(), id)
+        return replicaJdbcTemplate.query("SELECT " + COLUMNS + " FROM book WHERE id = ?", new BookMapper(), id)
                 .stream()
                 .findFirst()
                 .isPresent();
@@ -95,63 +287,150 @@ public class BooksRepository implements ListCrudRepository<Book, Integer> {
     @Override
     public void deleteById(Integer id) {
         jdbcTemplate.update("DELETE FROM book WHERE id =?", id);
+        bookCache.invalidate(id);
+        afterCommit(() -> catalogSnapshot.remove(id));
     }
 
     @Override
     public void delete(Book entity) {
-        jdbcTemplate.update("DELETE FROM book WHERE title = ? AND author = ?", entity.getTitle(), entity.getAuthor());
+        List<Integer> ids = jdbcTemplate.queryForList("DELETE FROM book WHERE title = ? AND author = ? RETURNING id",
+                Integer.class, entity.getTitle(), entity.getAuthor());
+        bookCache.invalidateAll(ids);
+        afterCommit(() -> catalogSnapshot.removeAll(ids));
     }
 
     @Override
     public void deleteAllById(Iterable<? extends Integer> ints) {
-        List<Integer> ids = new ArrayList<>((Collection) ints);
-        jdbcTemplate.batchUpdate("DELETE FROM book WHERE id =?", new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                ps.setInt(1, ints.iterator().next());
-            }
-
-            @Override
-            public int getBatchSize() {
-                return ids.size();
-            }
-        });
+        List<Integer> ids = new ArrayList<>();
+        ints.forEach(ids::add);
+        IdArrays.update(jdbcTemplate, transaction, "DELETE FROM book WHERE id = ANY (?)", ids);
+        bookCache.invalidateAll(ids);
+        afterCommit(() -> catalogSnapshot.removeAll(ids));
     }
 
     @Override
     public void deleteAll(Iterable<? extends Book> entities) {
-        List<Book> books = new ArrayList<>((Collection) entities);
-        jdbcTemplate.batchUpdate("DELETE FROM person WHERE id = ?", new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                ps.setInt(1, entities.iterator().next().getId());
-            }
-
-            @Override
-            public int getBatchSize() {
-                return books.size();
-            }
-        });
+        List<Integer> ids = new ArrayList<>();
+        entities.forEach(book -> ids.add(book.getId()));
+        deleteAllById(ids);
     }
 
     @Override
     public void deleteAll() {
         jdbcTemplate.update("TRUNCATE book");
-    }
-
-    public void release(int id) {
-        jdbcTemplate.update("UPDATE book SET person_id = NULL WHERE id =?", id);
+        bookCache.invalidateAll();
+        afterCommit(catalogSnapshot::clear);
     }
 
     public Optional<Person> getOwner(Integer id) {
-        return jdbcTemplate.query("SELECT person.* FROM book " +
+        return replicaJdbcTemplate.query("SELECT person.* FROM book " +
                         "JOIN person ON book.person_id = person.id where book.id=?",
                         new PersonMapper(), id)
                 .stream()
                 .findAny();
     }
 
-    public void assign(int id, Person selectedPerson) {
-        jdbcTemplate.update("UPDATE book SET person_id =? WHERE id =?", selectedPerson.getId(), id);
+    /**
+     * Lends the book to the patron if it is free, deciding and reporting in one statement: the row is locked,
+     * so of two desks racing for the same book exactly one gets {@link CheckoutOutcome#CHECKED_OUT}.
+     */
+    public CheckoutOutcome checkout(int id, int personId) {
+        CheckoutOutcome outcome = jdbcTemplate.query(CHECKOUT_SQL, ps -> {
+            IdArrays.bind(ps, 1, new Integer[]{id});
+            ps.setInt(2, personId);
+            ps.setInt(3, LOAN_PERIOD_DAYS);
+        }, rs -> rs.next() ? checkoutOutcome(rs, personId) : CheckoutOutcome.NOT_FOUND);
+        afterCommit(() -> bookCache.invalidate(id));
+        return outcome;
+    }
+
+    /**
+     * {@link #checkout} for many books to one patron in a single round trip. Each book is decided on its own;
+     * the result has an outcome for every requested id, in request order.
+     */
+    public Map<Integer, CheckoutOutcome> checkoutAll(Collection<Integer> ids, int personId) {
+        Map<Integer, CheckoutOutcome> outcomes = new LinkedHashMap<>();
+        ids.forEach(id -> outcomes.put(id, CheckoutOutcome.NOT_FOUND));
+        if (outcomes.isEmpty()) {
+            return outcomes;
+        }
+        jdbcTemplate.query(CHECKOUT_SQL, ps -> {
+            IdArrays.bind(ps, 1, outcomes.keySet().toArray(new Integer[0]));
+            ps.setInt(2, personId);
+            ps.setInt(3, LOAN_PERIOD_DAYS);
+        }, (RowCallbackHandler) rs -> outcomes.put(rs.getInt("id"), checkoutOutcome(rs, personId)));
+        afterCommit(() -> bookCache.invalidateAll(outcomes.keySet()));
+        return outcomes;
+    }
+
+    /**
+     * Frees the book only if {@code personId} has it, deciding and reporting in one statement.
+     */
+    public ReturnOutcome returnBook(int id, int personId) {
+        ReturnOutcome outcome = jdbcTemplate.query(
+                "WITH target AS (SELECT id, person_id FROM book WHERE id = ? FOR UPDATE), " +
+                        "changed AS (UPDATE book SET person_id = NULL, due_at = NULL, version = book.version + 1, " +
+                        "updated_at = now() FROM target " +
+                        "WHERE book.id = target.id AND target.person_id = ? RETURNING book.id), " +
+                        "logged AS (INSERT INTO loan_event (book_id, person_id, event_type) " +
+                        "SELECT target.id, target.person_id, 'RETURN' FROM target JOIN changed ON changed.id = target.id) " +
+                        "SELECT target.person_id, EXISTS (SELECT 1 FROM changed) AS changed FROM target",
+                rs -> {
+                    if (!rs.next()) {
+                        return ReturnOutcome.NOT_FOUND;
+                    }
+                    if (rs.getBoolean("changed")) {
+                        return ReturnOutcome.RETURNED;
+                    }
+                    return rs.getObject("person_id") == null ? ReturnOutcome.NOT_ON_LOAN : ReturnOutcome.HELD_BY_OTHER;
+                }, id, personId);
+        afterCommit(() -> bookCache.invalidate(id));
+        return outcome;
+    }
+
+    /**
+     * Runs {@code action} once the surrounding transaction commits, or right away outside a transaction,
+     * so the catalog snapshot never shows a write that was rolled back.
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static CheckoutOutcome checkoutOutcome(ResultSet rs, int personId) throws SQLException {
+        if (rs.getBoolean("changed")) {
+            return CheckoutOutcome.CHECKED_OUT;
+        }
+        int holder = rs.getInt("person_id");
+        if (rs.wasNull()) {
+            // free, yet not lent: there is no such patron
+            return CheckoutOutcome.NO_SUCH_PATRON;
+        }
+        return holder == personId ? CheckoutOutcome.ALREADY_HELD : CheckoutOutcome.HELD_BY_OTHER;
+    }
+
+    /**
+     * Forward-only statement with a fetch size; exposes its SQL so statement metrics can name it.
+     */
+    private record CursorStatementCreator(String sql, int fetchSize) implements PreparedStatementCreator, SqlProvider {
+        @Override
+        public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }
+
+        @Override
+        public String getSql() {
+            return sql;
+        }
     }
 }
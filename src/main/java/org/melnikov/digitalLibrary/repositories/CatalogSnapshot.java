@@ -0,0 +1,494 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.melnikov.digitalLibrary.models.Book;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of the columns the book index shows, so {@code /books} pages are served without the database.
+ * <p>
+ * Stored column-wise and sorted by id: ids and years in {@code int} arrays, titles in a {@code String} array,
+ * authors as {@code int} references into a de-duplicated, reference-counted author table. Orders by title and
+ * author are kept as position permutations and their inverses. That is 28 bytes per book plus the title string.
+ * The orders are sorted once per {@link #reload()}; afterwards each write moves the book within them by binary
+ * search, in time linear in the catalog size like the column shift itself, so no page ever waits for a resort.
+ * <p>
+ * Loaded at startup when {@code catalog.snapshot.enabled} is set and kept current by {@link BooksRepository}'s
+ * write paths. {@link #reload()} picks up writes that bypass the repository, such as bulk imports. If the
+ * catalog outgrows {@code catalog.snapshot.max_books}, the snapshot drops its arrays and deactivates, and
+ * callers fall back to the database.
+ *
+ * @author Nikolay Melnikov
+ */
+public class CatalogSnapshot {
+
+    private static final int NO_YEAR = Integer.MIN_VALUE;
+    private static final Comparator<String> BY_CODE_POINT = Comparator.nullsLast(CatalogSnapshot::compareCodePoints);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int maxBooks;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private boolean active;
+    private int size;
+    private int[] ids;
+    private int[] years;
+    private int[] authorRefs;
+    private String[] titles;
+    private List<String> authors;
+    private int[] authorUses;
+    private Deque<Integer> freeAuthorRefs;
+    private Map<String, Integer> authorRefsByName;
+    private final Map<BookSort, SortOrder> orders = new EnumMap<>(BookSort.class);
+
+    public CatalogSnapshot(JdbcTemplate jdbcTemplate, boolean enabled, int maxBooks) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxBooks = maxBooks;
+    }
+
+    /**
+     * Reads the whole catalog; a no-op when the snapshot is disabled. Repository writes wait meanwhile and are
+     * applied on top, which is safe because every write operation here is idempotent.
+     */
+    public void reload() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            reset(1024);
+            active = true;
+            jdbcTemplate.query("SELECT id, title, author, year_of_publication FROM book ORDER BY id", rs -> {
+                if (active) {
+                    Object year = rs.getObject(4);
+                    append(rs.getInt(1), rs.getString(2), rs.getString(3), year == null ? NO_YEAR : ((Number) year).intValue());
+                }
+            });
+            if (active) {
+                sortOrders();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isActive() {
+        lock.readLock().lock();
+        try {
+            return active;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return active ? size : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Distinct authors of the books held.
+     */
+    int authorCount() {
+        lock.readLock().lock();
+        try {
+            return authorRefsByName.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Same page {@link BooksRepository#findPage} would return, with only the index columns filled in;
+     * empty when the snapshot is not active.
+     */
+    public Optional<KeysetPage<Book>> findPage(Integer after, Integer before, int size, BookSort sort) {
+        lock.readLock().lock();
+        try {
+            if (!active) {
+                return Optional.empty();
+            }
+            return Optional.of(page(after, before, size, sort));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts the book or replaces its index columns.
+     */
+    public void put(int id, String title, String author, Integer yearOfPublication) {
+        lock.writeLock().lock();
+        try {
+            upsert(id, title, author, yearOfPublication);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Collection<? extends Book> books) {
+        lock.writeLock().lock();
+        try {
+            for (Book book : books) {
+                upsert(book.getId(), book.getTitle(), book.getAuthor(), book.getYearOfPublication());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        removeAll(List.of(id));
+    }
+
+    public void removeAll(Collection<Integer> removedIds) {
+        lock.writeLock().lock();
+        try {
+            if (!active) {
+                return;
+            }
+            for (Integer id : removedIds) {
+                int position = Arrays.binarySearch(ids, 0, size, id);
+                if (position >= 0) {
+                    for (SortOrder order : orders.values()) {
+                        order.removing(position);
+                    }
+                    releaseAuthor(authorRefs[position]);
+                    int tail = size - position - 1;
+                    System.arraycopy(ids, position + 1, ids, position, tail);
+                    System.arraycopy(years, position + 1, years, position, tail);
+                    System.arraycopy(authorRefs, position + 1, authorRefs, position, tail);
+                    System.arraycopy(titles, position + 1, titles, position, tail);
+                    titles[--size] = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            if (active) {
+                reset(1024);
+                sortOrders();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private KeysetPage<Book> page(Integer after, Integer before, int pageSize, BookSort sort) {
+        SortOrder order = orders.get(sort);
+        boolean backward = before != null;
+        List<Book> rows = new ArrayList<>(pageSize + 1);
+        if (backward) {
+            int end = rankOf(before, order, false);
+            for (int rank = end - 1; rank >= 0 && rows.size() <= pageSize; rank--) {
+                rows.add(book(order == null ? rank : order.positions[rank]));
+            }
+        } else {
+            int start = after == null ? 0 : rankOf(after, order, true);
+            for (int rank = start; rank < size && rows.size() <= pageSize; rank++) {
+                rows.add(book(order == null ? rank : order.positions[rank]));
+            }
+        }
+        return KeysetPage.of(rows, pageSize, after, before, Book::getId);
+    }
+
+    /**
+     * Rank where a page next to the cursor book starts ({@code forward}) or ends (exclusive).
+     * Like the SQL version, a cursor whose book is gone yields an empty page for title and author orders.
+     */
+    private int rankOf(int cursorId, SortOrder order, boolean forward) {
+        int position = Arrays.binarySearch(ids, 0, size, cursorId);
+        if (order == null) {
+            if (position < 0) {
+                return -position - 1;
+            }
+            return forward ? position + 1 : position;
+        }
+        if (position < 0) {
+            return forward ? size : 0;
+        }
+        return forward ? order.ranks[position] + 1 : order.ranks[position];
+    }
+
+    private void sortOrders() {
+        orders.put(BookSort.TITLE, new SortOrder(BookSort.TITLE));
+        orders.put(BookSort.AUTHOR, new SortOrder(BookSort.AUTHOR));
+    }
+
+    /**
+     * The order of {@code COLLATE "C"} on UTF-8 text, see {@link KeysetPage#sql}. {@link String#compareTo}
+     * compares UTF-16 units instead, which puts characters above U+FFFF before U+E000-U+FFFF.
+     */
+    static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    private Book book(int position) {
+        Book book = new Book();
+        book.setId(ids[position]);
+        book.setTitle(titles[position]);
+        book.setAuthor(authors.get(authorRefs[position]));
+        book.setYearOfPublication(years[position] == NO_YEAR ? null : years[position]);
+        return book;
+    }
+
+    private void upsert(int id, String title, String author, Integer yearOfPublication) {
+        if (!active) {
+            return;
+        }
+        int year = yearOfPublication == null ? NO_YEAR : yearOfPublication;
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if (position >= 0) {
+            boolean titleChanged = !Objects.equals(titles[position], title);
+            int oldAuthorRef = authorRefs[position];
+            titles[position] = title;
+            authorRefs[position] = authorRef(author);
+            years[position] = year;
+            releaseAuthor(oldAuthorRef);
+            if (titleChanged) {
+                orders.get(BookSort.TITLE).reorder(position);
+            }
+            if (authorRefs[position] != oldAuthorRef) {
+                orders.get(BookSort.AUTHOR).reorder(position);
+            }
+        } else {
+            insert(-position - 1, id, title, author, year);
+        }
+    }
+
+    private void append(int id, String title, String author, int year) {
+        insert(size, id, title, author, year);
+    }
+
+    private void insert(int position, int id, String title, String author, int year) {
+        if (size == maxBooks) {
+            deactivate();
+            return;
+        }
+        if (size == ids.length) {
+            int capacity = Math.min(maxBooks, Math.max(16, size + (size >> 1)));
+            ids = Arrays.copyOf(ids, capacity);
+            years = Arrays.copyOf(years, capacity);
+            authorRefs = Arrays.copyOf(authorRefs, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            for (SortOrder order : orders.values()) {
+                order.grow(capacity);
+            }
+        }
+        int tail = size - position;
+        System.arraycopy(ids, position, ids, position + 1, tail);
+        System.arraycopy(years, position, years, position + 1, tail);
+        System.arraycopy(authorRefs, position, authorRefs, position + 1, tail);
+        System.arraycopy(titles, position, titles, position + 1, tail);
+        ids[position] = id;
+        years[position] = year;
+        authorRefs[position] = authorRef(author);
+        titles[position] = title;
+        size++;
+        for (SortOrder order : orders.values()) {
+            order.inserted(position);
+        }
+    }
+
+    /**
+     * Reference to the author, counted as one more use; every reference taken is given back with
+     * {@link #releaseAuthor}, so authors no book names any more do not pile up between reloads.
+     */
+    private int authorRef(String author) {
+        int ref = authorRefsByName.computeIfAbsent(author, name -> {
+            Integer free = freeAuthorRefs.poll();
+            if (free != null) {
+                authors.set(free, name);
+                return free;
+            }
+            authors.add(name);
+            if (authorUses.length < authors.size()) {
+                authorUses = Arrays.copyOf(authorUses, Math.max(16, authorUses.length * 2));
+            }
+            return authors.size() - 1;
+        });
+        authorUses[ref]++;
+        return ref;
+    }
+
+    private void releaseAuthor(int ref) {
+        if (--authorUses[ref] == 0) {
+            authorRefsByName.remove(authors.get(ref));
+            authors.set(ref, null);
+            freeAuthorRefs.push(ref);
+        }
+    }
+
+    private void deactivate() {
+        active = false;
+        reset(0);
+    }
+
+    private void reset(int capacity) {
+        capacity = Math.min(capacity, maxBooks);
+        size = 0;
+        ids = new int[capacity];
+        years = new int[capacity];
+        authorRefs = new int[capacity];
+        titles = new String[capacity];
+        authors = new ArrayList<>();
+        authorUses = new int[0];
+        freeAuthorRefs = new ArrayDeque<>();
+        authorRefsByName = new HashMap<>();
+        orders.clear();
+    }
+
+    /**
+     * Title or author order of the books, ties by id as in SQL. Kept in step with the column arrays: the hooks
+     * below run under the write lock, right around the column change they are named after.
+     */
+    private final class SortOrder {
+        private final BookSort sort;
+        /**
+         * Column positions in sort order.
+         */
+        private int[] positions;
+        /**
+         * Rank of the book at each column position, the inverse of {@code positions}.
+         */
+        private int[] ranks;
+
+        SortOrder(BookSort sort) {
+            this.sort = sort;
+            Integer[] sorted = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = i;
+            }
+            // positions follow id order, and the sort is stable, so ties stay ordered by id
+            Arrays.sort(sorted, (a, b) -> compareKeys(key(a), key(b)));
+            positions = new int[ids.length];
+            ranks = new int[ids.length];
+            for (int rank = 0; rank < size; rank++) {
+                positions[rank] = sorted[rank];
+                ranks[sorted[rank]] = rank;
+            }
+        }
+
+        void grow(int capacity) {
+            positions = Arrays.copyOf(positions, capacity);
+            ranks = Arrays.copyOf(ranks, capacity);
+        }
+
+        /**
+         * The book just inserted at {@code position}; the books from there on have moved up one position.
+         */
+        void inserted(int position) {
+            int count = size - 1;
+            System.arraycopy(ranks, position, ranks, position + 1, count - position);
+            for (int rank = 0; rank < count; rank++) {
+                if (positions[rank] >= position) {
+                    positions[rank]++;
+                }
+            }
+            attach(position, count);
+        }
+
+        /**
+         * The book at {@code position} is about to be removed from the columns.
+         */
+        void removing(int position) {
+            detach(position);
+            System.arraycopy(ranks, position + 1, ranks, position, size - position - 1);
+            for (int i = 0; i < size - 1; i++) {
+                if (positions[i] > position) {
+                    positions[i]--;
+                }
+            }
+        }
+
+        /**
+         * The key of the book at {@code position} has just changed.
+         */
+        void reorder(int position) {
+            detach(position);
+            attach(position, size - 1);
+        }
+
+        /**
+         * Takes the book out of {@code positions}, closing the gap; its own entry in {@code ranks} is left stale.
+         */
+        private void detach(int position) {
+            int rank = ranks[position];
+            System.arraycopy(positions, rank + 1, positions, rank, size - rank - 1);
+            for (int i = 0; i < size; i++) {
+                if (ranks[i] > rank) {
+                    ranks[i]--;
+                }
+            }
+        }
+
+        /**
+         * Puts the book back among the {@code count} others by binary search.
+         */
+        private void attach(int position, int count) {
+            String key = key(position);
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int cmp = compareKeys(key(positions[middle]), key);
+                if (cmp < 0 || cmp == 0 && positions[middle] < position) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            System.arraycopy(positions, low, positions, low + 1, count - low);
+            positions[low] = position;
+            for (int i = 0; i < size; i++) {
+                if (i != position && ranks[i] >= low) {
+                    ranks[i]++;
+                }
+            }
+            ranks[position] = low;
+        }
+
+        private String key(int position) {
+            return sort == BookSort.TITLE ? titles[position] : authors.get(authorRefs[position]);
+        }
+    }
+
+    private static int compareKeys(String a, String b) {
+        return BY_CODE_POINT.compare(a, b);
+    }
+}
@@ -0,0 +1,18 @@
+package org.melnikov.digitalLibrary.repositories;
+
+/**
+ * What {@link BooksRepository#checkout} found when it tried to lend a book.
+ *
+ * @author Nikolay Melnikov
+ */
+public enum CheckoutOutcome {
+    /** The book was free and is now lent to the patron. */
+    CHECKED_OUT,
+    /** The patron already had the book; nothing changed. */
+    ALREADY_HELD,
+    /** Someone else has the book; nothing changed. */
+    HELD_BY_OTHER,
+    /** The book is free, but the patron does not exist; nothing changed. */
+    NO_SUCH_PATRON,
+    NOT_FOUND
+}
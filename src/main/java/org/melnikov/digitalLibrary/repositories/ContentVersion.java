@@ -0,0 +1,17 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import java.time.Instant;
+
+/**
+ * Validator for a rendered page: an entity tag built from the versions of everything the page shows,
+ * and the latest modification time among them.
+ *
+ * @author Nikolay Melnikov
+ */
+public record ContentVersion(String tag, Instant lastModified) {
+
+    public ContentVersion and(ContentVersion other) {
+        return new ContentVersion(tag + "-" + other.tag,
+                lastModified.isAfter(other.lastModified) ? lastModified : other.lastModified);
+    }
+}
@@ -0,0 +1,94 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Cheap version lookups for conditional GETs: one primary-key read each, no rendering data.
+ * Row versions come from the {@code version}/{@code updated_at} columns, table versions from {@code table_version},
+ * summed over its per-connection slots.
+ *
+ * @author Nikolay Melnikov
+ */
+@Component
+public class ContentVersions {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Reads go to the replicas. Within a request they stay on one replica, so content read after the version
+     * is at least as new as the version.
+     */
+    @Autowired
+    public ContentVersions(@Qualifier("replicaJdbcTemplate") JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Any write to the table, including deletes and bulk imports, changes this version.
+     */
+    public ContentVersion table(String tableName) {
+        return jdbcTemplate.queryForObject("SELECT sum(version) AS version, max(updated_at) AS updated_at " +
+                        "FROM table_version WHERE table_name = ?",
+                (rs, rowNum) -> new ContentVersion(tableName + "." + rs.getLong("version"),
+                        rs.getTimestamp("updated_at").toInstant()),
+                tableName);
+    }
+
+    /**
+     * The book and its current holder, as shown on the book page.
+     */
+    public Optional<ContentVersion> book(int id) {
+        return jdbcTemplate.query("SELECT book.version, book.updated_at, person.id AS person_id, " +
+                                "person.version AS person_version, person.updated_at AS person_updated_at " +
+                                "FROM book LEFT JOIN person ON book.person_id = person.id WHERE book.id = ?",
+                        (rs, rowNum) -> {
+                            Instant lastModified = latest(rs.getTimestamp("updated_at").toInstant(),
+                                    rs.getTimestamp("person_updated_at"));
+                            return new ContentVersion("book" + id + "." + rs.getLong("version") +
+                                    "-holder" + rs.getInt("person_id") + "." + rs.getLong("person_version"),
+                                    lastModified);
+                        }, id)
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * The person and the books they hold, as shown on the person page. Their latest loan event covers books
+     * moving into or out of the list and becoming overdue; the held books' versions cover edits of those books.
+     * Loans of other patrons leave it alone.
+     */
+    public Optional<ContentVersion> person(int id) {
+        return jdbcTemplate.query("SELECT person.version, person.updated_at, held.count AS held_count, " +
+                                "held.version AS held_version, held.updated_at AS held_updated_at, " +
+                                "last_loan.id AS loan_event_id, last_loan.occurred_at AS loan_occurred_at " +
+                                "FROM person " +
+                                "CROSS JOIN (SELECT count(*) AS count, coalesce(sum(version), 0) AS version, " +
+                                "max(updated_at) AS updated_at FROM book WHERE person_id = ?) held " +
+                                "LEFT JOIN LATERAL (SELECT id, occurred_at FROM loan_event " +
+                                "WHERE loan_event.person_id = person.id " +
+                                "ORDER BY occurred_at DESC, id DESC LIMIT 1) last_loan ON true " +
+                                "WHERE person.id = ?",
+                        (rs, rowNum) -> {
+                            Instant lastModified = rs.getTimestamp("updated_at").toInstant();
+                            lastModified = latest(lastModified, rs.getTimestamp("held_updated_at"));
+                            lastModified = latest(lastModified, rs.getTimestamp("loan_occurred_at"));
+                            return new ContentVersion("person" + id + "." + rs.getLong("version") +
+                                    "-loans." + rs.getLong("loan_event_id") +
+                                    "-held." + rs.getLong("held_count") + "." + rs.getLong("held_version"),
+                                    lastModified);
+                        }, id, id)
+                .stream()
+                .findFirst();
+    }
+
+    private static Instant latest(Instant instant, Timestamp other) {
+        return other != null && other.toInstant().isAfter(instant) ? other.toInstant() : instant;
+    }
+}
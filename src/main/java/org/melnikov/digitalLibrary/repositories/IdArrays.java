@@ -0,0 +1,82 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Statements over a set of ids bound as one {@code integer[]} parameter ({@code WHERE id = ANY (?)}),
+ * so N ids cost one statement instead of N. Ids are de-duplicated, sorted and sent in chunks of {@link #CHUNK_SIZE}
+ * to keep each array parameter bounded. Every id of a chunk is below every id of the next one, so a query ordered
+ * by id returns globally ordered rows, and deletes lock rows in id order.
+ *
+ * @author Nikolay Melnikov
+ */
+final class IdArrays {
+
+    static final int CHUNK_SIZE = 10_000;
+
+    private IdArrays() {
+    }
+
+    static List<Integer[]> chunks(Iterable<? extends Integer> ids) {
+        SortedSet<Integer> distinct = new TreeSet<>();
+        for (Integer id : ids) {
+            if (id != null) {
+                distinct.add(id);
+            }
+        }
+        Integer[] all = distinct.toArray(new Integer[0]);
+        List<Integer[]> chunks = new ArrayList<>(all.length / CHUNK_SIZE + 1);
+        for (int from = 0; from < all.length; from += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(all, from, Math.min(all.length, from + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Runs {@code sql}, whose only parameter is the id array, once per chunk and concatenates the rows;
+     * with {@code ORDER BY id} in {@code sql} the result is ordered by id as a whole.
+     */
+    static <T> List<T> query(JdbcTemplate jdbcTemplate, String sql, RowMapper<T> rowMapper,
+                             Iterable<? extends Integer> ids) {
+        List<T> rows = new ArrayList<>();
+        for (Integer[] chunk : chunks(ids)) {
+            rows.addAll(jdbcTemplate.query(sql, ps -> bind(ps, 1, chunk), rowMapper));
+        }
+        return rows;
+    }
+
+    /**
+     * Runs {@code sql}, whose only parameter is the id array, once per chunk; several chunks share one transaction.
+     *
+     * @return the number of rows affected
+     */
+    static int update(JdbcTemplate jdbcTemplate, TransactionOperations transaction, String sql,
+                      Iterable<? extends Integer> ids) {
+        List<Integer[]> chunks = chunks(ids);
+        if (chunks.size() == 1) {
+            return jdbcTemplate.update(sql, ps -> bind(ps, 1, chunks.get(0)));
+        }
+        Integer updated = transaction.execute(status -> {
+            int rows = 0;
+            for (Integer[] chunk : chunks) {
+                rows += jdbcTemplate.update(sql, ps -> bind(ps, 1, chunk));
+            }
+            return rows;
+        });
+        return updated == null ? 0 : updated;
+    }
+
+    static void bind(PreparedStatement ps, int index, Integer[] ids) throws SQLException {
+        ps.setArray(index, ps.getConnection().createArrayOf("integer", ids));
+    }
+}
@@ -0,0 +1,75 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset (seek) pagination over {@code id}.
+ * {@code firstId}/{@code lastId} are the cursors for the previous and next page links.
+ *
+ * @author Nikolay Melnikov
+ */
+public record KeysetPage<T>(List<T> content, Integer firstId, Integer lastId,
+                            boolean hasPrevious, boolean hasNext) {
+
+    public static final int DEFAULT_SIZE = 20;
+    public static final int MAX_SIZE = 100;
+
+    public static int clampSize(Integer size) {
+        if (size == null || size < 1) {
+            return DEFAULT_SIZE;
+        }
+        return Math.min(size, MAX_SIZE);
+    }
+
+    /**
+     * Builds the page from rows fetched with {@code LIMIT size + 1}; a backward fetch comes in
+     * descending order and is flipped here.
+     */
+    static <T> KeysetPage<T> of(List<T> rows, int size, Integer after, Integer before,
+                                Function<T, Integer> idGetter) {
+        boolean backward = before != null;
+        boolean more = rows.size() > size;
+        List<T> content = more ? rows.subList(0, size) : rows;
+        if (backward) {
+            Collections.reverse(content);
+        }
+
+        Integer firstId = content.isEmpty() ? null : idGetter.apply(content.get(0));
+        Integer lastId = content.isEmpty() ? null : idGetter.apply(content.get(content.size() - 1));
+        boolean hasPrevious = backward ? more : after != null;
+        boolean hasNext = backward || more;
+        return new KeysetPage<>(content, firstId, lastId, hasPrevious, hasNext);
+    }
+
+    /**
+     * SQL for one keyset step over {@code table}, ordered by {@code sortColumn} with {@code id} as tiebreaker.
+     * The cursor is always an id; for a non-id sort its sort key is looked up with a subquery.
+     * Text keys compare with {@code COLLATE "C"}, i.e. by code point whatever the database locale, which is
+     * also the order {@link CatalogSnapshot} sorts in, so pages and cursors are the same on both paths.
+     */
+    static String sql(String table, String columns, String sortColumn, boolean hasCursor, boolean backward) {
+        String operator = backward ? "<" : ">";
+        String direction = backward ? " DESC" : "";
+        boolean byId = "id".equals(sortColumn);
+        String sortKey = sortColumn + " COLLATE \"C\"";
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(" FROM ").append(table);
+        if (hasCursor) {
+            if (byId) {
+                sql.append(" WHERE id ").append(operator).append(" ?");
+            } else {
+                sql.append(" WHERE (").append(sortKey).append(", id) ").append(operator)
+                        .append(" (SELECT ").append(sortColumn).append(", id FROM ").append(table)
+                        .append(" WHERE id = ?)");
+            }
+        }
+        sql.append(" ORDER BY ");
+        if (!byId) {
+            sql.append(sortKey).append(direction).append(", ");
+        }
+        sql.append("id").append(direction).append(" LIMIT ?");
+        return sql.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bloom filter over {@code person.full_name}, so that {@link PersonRepository#existsByName} can answer
+ * "definitely not taken" without a query. A positive answer only means "maybe" and is confirmed in SQL.
+ * <p>
+ * Loaded at startup when {@code people.name_filter.enabled} is set, and {@link PersonRepository} adds every saved
+ * or renamed person. Deleted names cannot be taken out and just stay as false positives. Once the names outgrow
+ * the sized capacity, the filter rebuilds itself twice as large to keep the false-positive rate near the target.
+ * It never decides uniqueness alone: names inserted by other instances or behind the repository's back are
+ * caught by the {@code full_name} unique constraint.
+ *
+ * @author Nikolay Melnikov
+ */
+public class PersonNameFilter {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final double falsePositiveRate;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile Bits bits;
+
+    public PersonNameFilter(JdbcTemplate jdbcTemplate, boolean enabled, double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Reads every name; a no-op when the filter is disabled. Additions wait meanwhile and go into the new filter.
+     */
+    public void reload() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long count = jdbcTemplate.queryForObject("SELECT count(*) FROM person", Long.class);
+            Bits loaded = new Bits(Math.max(MIN_CAPACITY, 2 * count), falsePositiveRate);
+            jdbcTemplate.query("SELECT full_name FROM person", rs -> {
+                loaded.add(rs.getString(1));
+            });
+            bits = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@code false} only if no person with this name was loaded or added; always {@code true} while inactive.
+     */
+    public boolean mightContain(String name) {
+        Bits current = bits;
+        return current == null || name == null || current.mightContain(name);
+    }
+
+    public void add(String name) {
+        if (!enabled || name == null) {
+            return;
+        }
+        boolean full;
+        lock.readLock().lock();
+        try {
+            if (bits == null) {
+                return;
+            }
+            full = !bits.add(name);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (full) {
+            reload();
+        }
+    }
+
+    private static final class Bits {
+
+        private final AtomicLongArray words;
+        private final long size;
+        private final int hashes;
+        private final long capacity;
+        private final AtomicLong added = new AtomicLong();
+
+        private Bits(long capacity, double falsePositiveRate) {
+            long bitCount = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray(Math.toIntExact((bitCount + 63) / 64));
+            this.size = words.length() * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) size / capacity * Math.log(2)));
+            this.capacity = capacity;
+        }
+
+        /**
+         * @return {@code false} once more names were added than the filter was sized for
+         */
+        private boolean add(String name) {
+            long hash = hash(name);
+            long second = mix(hash) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash + i * second, size);
+                long mask = 1L << bit;
+                int word = (int) (bit >>> 6);
+                long current = words.get(word);
+                while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                    current = words.get(word);
+                }
+            }
+            return added.incrementAndGet() <= capacity;
+        }
+
+        private boolean mightContain(String name) {
+            long hash = hash(name);
+            long second = mix(hash) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash + i * second, size);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FNV-1a over the UTF-8 bytes, finished with a mixing step
+        private static long hash(String name) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            return mix(hash);
+        }
+
+        // splitmix64 finalizer
+        private static long mix(long value) {
+            value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+            value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+            return value ^ (value >>> 31);
+        }
+    }
+}
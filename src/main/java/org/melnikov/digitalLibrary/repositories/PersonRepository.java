@@ -1,20 +1,21 @@
 package org.melnikov.digitalLibrary.repositories;
 
+import org.melnikov.digitalLibrary.cache.EntityCache;
 import org.melnikov.digitalLibrary.mappers.BookMapper;
 import org.melnikov.digitalLibrary.mappers.PersonMapper;
 import org.melnikov.digitalLibrary.models.Book;
 import org.melnikov.digitalLibrary.models.Person;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.repository.ListCrudRepository;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -24,47 +25,90 @@ import java.util.Optional;
 public class PersonRepository implements ListCrudRepository<Person, Integer> {
 
     private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final EntityCache<Person> personCache;
+    private final TransactionTemplate transaction;
+    private final PersonNameFilter nameFilter;
 
     @Autowired
-    public PersonRepository(JdbcTemplate jdbcTemplate) {
+    public PersonRepository(JdbcTemplate jdbcTemplate,
+                            @Qualifier("replicaJdbcTemplate") JdbcTemplate replicaJdbcTemplate,
+                            PlatformTransactionManager transactionManager, EntityCache<Person> personCache,
+                            PersonNameFilter nameFilter) {
         this.jdbcTemplate = jdbcTemplate;
+        this.replicaJdbcTemplate = replicaJdbcTemplate;
+        this.personCache = personCache;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.nameFilter = nameFilter;
     }
 
     @Override
     public <S extends Person> S save(S person) {
-        jdbcTemplate.update("INSERT INTO person (full_name, year_of_birth) VALUES(?,?)",
-                person.getFullName(), person.getYearOfBirth());
+        person.setId(jdbcTemplate.queryForObject(
+                "INSERT INTO person (full_name, year_of_birth) VALUES(?,?) RETURNING id",
+                Integer.class, person.getFullName(), person.getYearOfBirth()));
+        nameFilter.add(person.getFullName());
         return person;
     }
 
+    /**
+     * Same chunked multi-row insert as {@link BooksRepository#saveAll}.
+     */
     @Override
     public <S extends Person> List<S> saveAll(Iterable<S> entities) {
-        List<S> people = new ArrayList<>((Collection<S>) entities);
-        jdbcTemplate.batchUpdate("INSERT INTO person (full_name, year_of_birth) VALUES(?,?)", new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                ps.setString(1, people.get(i).getFullName());
-                ps.setInt(2, people.get(i).getYearOfBirth());
-            }
-
-            @Override
-            public int getBatchSize() {
-                return people.size();
-            }
-        });
+        List<S> people = new ArrayList<>();
+        entities.forEach(people::add);
+        if (people.size() <= BooksRepository.INSERT_CHUNK_SIZE) {
+            insert(people);
+        } else {
+            transaction.executeWithoutResult(status -> {
+                for (int from = 0; from < people.size(); from += BooksRepository.INSERT_CHUNK_SIZE) {
+                    insert(people.subList(from, Math.min(people.size(), from + BooksRepository.INSERT_CHUNK_SIZE)));
+                }
+            });
+        }
+        people.forEach(person -> nameFilter.add(person.getFullName()));
         return people;
     }
 
+    private void insert(List<? extends Person> people) {
+        if (people.isEmpty()) {
+            return;
+        }
+        String[] names = new String[people.size()];
+        Integer[] years = new Integer[people.size()];
+        for (int i = 0; i < people.size(); i++) {
+            names[i] = people.get(i).getFullName();
+            years[i] = people.get(i).getYearOfBirth();
+        }
+        List<Integer> ids = jdbcTemplate.query("INSERT INTO person (full_name, year_of_birth) " +
+                        "SELECT full_name, year_of_birth FROM unnest(?::varchar[], ?::integer[]) " +
+                        "WITH ORDINALITY AS row_values(full_name, year_of_birth, ord) " +
+                        "ORDER BY ord RETURNING id",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("varchar", names));
+                    ps.setArray(2, ps.getConnection().createArrayOf("integer", years));
+                },
+                (rs, rowNum) -> rs.getInt(1));
+        ids.sort(null);
+        for (int i = 0; i < people.size(); i++) {
+            people.get(i).setId(ids.get(i));
+        }
+    }
+
+    /**
+     * Read from the primary: a lagging replica could put a just-overwritten row back into the cache.
+     */
     @Override
     public Optional<Person> findById(Integer id) {
-        return jdbcTemplate.query("SELECT * FROM person WHERE id = ?", new PersonMapper(), id)
+        return personCache.get(id, key -> jdbcTemplate.query("SELECT * FROM person WHERE id = ?", new PersonMapper(), key)
                 .stream()
-                .findFirst();
+                .findFirst());
     }
 
     @Override
     public boolean existsById(Integer id) {
-        return jdbcTemplate.query("SELECT * FROM person WHERE id = ?", new PersonMapper(), id)
+        return replicaJdbcTemplate.query("SELECT * FROM person WHERE id = ?", new PersonMapper(), id)
                 .stream()
                 .findFirst()
                 .isPresent();
@@ -72,82 +116,126 @@ public class PersonRepository implements ListCrudRepository<Person, Integer> {
 
     @Override
     public List<Person> findAll() {
-        return jdbcTemplate.query("SELECT * FROM person", new PersonMapper());
+        return replicaJdbcTemplate.query("SELECT * FROM person", new PersonMapper());
+    }
+
+    /**
+     * Keyset pagination by id: pass {@code after} for the next page or {@code before} for the previous one.
+     */
+    public KeysetPage<Person> findPage(Integer after, Integer before, int size) {
+        Integer cursor = before != null ? before : after;
+        String sql = KeysetPage.sql("person", "*", "id", cursor != null, before != null);
+        Object[] args = cursor != null ? new Object[]{cursor, size + 1} : new Object[]{size + 1};
+        List<Person> rows = replicaJdbcTemplate.query(sql, new PersonMapper(), args);
+        return KeysetPage.of(rows, size, after, before, Person::getId);
+    }
+
+    public KeysetPage<Map<String, Object>> findPage(Integer after, Integer before, int size, Projection projection) {
+        Integer cursor = before != null ? before : after;
+        String sql = KeysetPage.sql("person", projection.selectList(), "id", cursor != null, before != null);
+        Object[] args = cursor != null ? new Object[]{cursor, size + 1} : new Object[]{size + 1};
+        List<Map<String, Object>> rows = replicaJdbcTemplate.query(sql, projection.rowMapper(), args);
+        return KeysetPage.of(rows, size, after, before, Projection::id);
+    }
+
+    public Optional<Map<String, Object>> findById(int id, Projection projection) {
+        return replicaJdbcTemplate.query("SELECT " + projection.selectList() + " FROM person WHERE id = ?",
+                        projection.rowMapper(), id)
+                .stream()
+                .findFirst();
     }
 
     @Override
     public List<Person> findAllById(Iterable<Integer> ints) {
-        return jdbcTemplate.query("SELECT * FROM person WHERE id =?", new PersonMapper(), ints);
+        return IdArrays.query(replicaJdbcTemplate, "SELECT * FROM person WHERE id = ANY (?) ORDER BY id",
+                new PersonMapper(), ints);
     }
 
     public Optional<Person> findByName(String fullName) {
-        return jdbcTemplate.query("SELECT * FROM person WHERE full_name =?", new PersonMapper(), fullName)
+        return replicaJdbcTemplate.query("SELECT * FROM person WHERE full_name =?", new PersonMapper(), fullName)
                 .stream()
                 .findFirst();
 
     }
 
+    /**
+     * Whether a person already has this name. Most new names are ruled out by the {@link PersonNameFilter}
+     * without a query; only possible matches are looked up.
+     */
+    public boolean existsByName(String fullName) {
+        return nameFilter.mightContain(fullName) && findByName(fullName).isPresent();
+    }
+
+    /**
+     * Patrons whose name starts with {@code prefix}, alphabetically, at most {@code limit} of them.
+     */
+    public List<Person> searchByNamePrefix(String prefix, int limit) {
+        String pattern = prefix.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+        return replicaJdbcTemplate.query("SELECT * FROM person WHERE full_name LIKE ? ORDER BY full_name LIMIT ?",
+                new PersonMapper(), pattern, limit);
+    }
+
     @Override
     public long count() {
-        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM person", Long.class);
+        return replicaJdbcTemplate.queryForObject("SELECT COUNT(*) FROM person", Long.class);
     }
 
     @Override
     public void deleteById(Integer id) {
         jdbcTemplate.update("DELETE FROM person WHERE id =?", id);
+        personCache.invalidate(id);
 
     }
 
     @Override
     public void delete(Person entity) {
         jdbcTemplate.update("DELETE FROM person WHERE full_name =?", entity.getFullName());
+        personCache.invalidateAll();
     }
 
     @Override
     public void deleteAllById(Iterable<? extends Integer> ints) {
-        List<Integer> ids = new ArrayList<>((Collection) ints);
-        jdbcTemplate.batchUpdate("DELETE FROM person WHERE id =?", new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                ps.setLong(1, ints.iterator().next());
-            }
-
-            @Override
-            public int getBatchSize() {
-                return ids.size();
-            }
-        });
-
+        List<Integer> ids = new ArrayList<>();
+        ints.forEach(ids::add);
+        IdArrays.update(jdbcTemplate, transaction, "DELETE FROM person WHERE id = ANY (?)", ids);
+        personCache.invalidateAll(ids);
     }
 
     @Override
     public void deleteAll(Iterable<? extends Person> entities) {
-        List<Person> people = new ArrayList<>((Collection) entities);
-        jdbcTemplate.batchUpdate("DELETE FROM person WHERE id = ?", new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                ps.setLong(1, entities.iterator().next().getId());
-            }
-
-            @Override
-            public int getBatchSize() {
-                return people.size();
-            }
-        });
+        List<Integer> ids = new ArrayList<>();
+        entities.forEach(person -> ids.add(person.getId()));
+        deleteAllById(ids);
     }
 
     @Override
     public void deleteAll() {
         jdbcTemplate.update("TRUNCATE person");
+        personCache.invalidateAll();
     }
 
 
     public void update(int id, Person updatedPerson) {
-        jdbcTemplate.update("UPDATE person SET full_name =?, year_of_birth = ? WHERE id = ?",
+        jdbcTemplate.update("UPDATE person SET full_name =?, year_of_birth = ?, " +
+                        "version = version + 1, updated_at = now() WHERE id = ?",
                 updatedPerson.getFullName(), updatedPerson.getYearOfBirth(), id);
+        nameFilter.add(updatedPerson.getFullName());
+        personCache.invalidate(id);
     }
 
     public List<Book> getBooksByPersonId(int id) {
-        return jdbcTemplate.query("SELECT * FROM book WHERE person_id =?", new BookMapper(), id);
+        return replicaJdbcTemplate.query("SELECT " + BooksRepository.COLUMNS + " FROM book WHERE person_id =?", new BookMapper(), id);
+    }
+
+    /**
+     * Books of the person that {@code OverdueScanner} has already reported, most overdue first. Bounded by the
+     * scanner's progress rather than the clock, so the list only changes together with the data version.
+     */
+    public List<Book> getOverdueBooksByPersonId(int id) {
+        return replicaJdbcTemplate.query("SELECT " + BooksRepository.COLUMNS + " FROM book, overdue_scan " +
+                        "WHERE person_id = ? AND due_at <= overdue_scan.scanned_until ORDER BY due_at",
+                new BookMapper(), id);
     }
 }
@@ -0,0 +1,89 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The columns of one table that the JSON API may expose, keyed by their field names, or a subset of them
+ * chosen with {@code fields=}. Queries select only the chosen columns, and rows come back as field-keyed maps
+ * in declaration order. {@code id} is always selected because the keyset cursors need it.
+ *
+ * @author Nikolay Melnikov
+ */
+public final class Projection {
+
+    public static final Projection BOOK = new Projection(columns(
+            "id", "id",
+            "title", "title",
+            "author", "author",
+            "yearOfPublication", "year_of_publication",
+            "personId", "person_id"));
+
+    public static final Projection PERSON = new Projection(columns(
+            "id", "id",
+            "fullName", "full_name",
+            "yearOfBirth", "year_of_birth"));
+
+    private final Map<String, String> columnsByField;
+    private final String selectList;
+
+    private Projection(Map<String, String> columnsByField) {
+        this.columnsByField = columnsByField;
+        this.selectList = String.join(", ", columnsByField.values());
+    }
+
+    /**
+     * Narrows this projection to a comma-separated list of field names; blank means all fields.
+     *
+     * @throws IllegalArgumentException for a field this projection does not have
+     */
+    public Projection select(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return this;
+        }
+        List<String> requested = Arrays.stream(fields.split(",")).map(String::trim).filter(f -> !f.isEmpty()).toList();
+        for (String field : requested) {
+            if (!columnsByField.containsKey(field)) {
+                throw new IllegalArgumentException("Unknown field '" + field + "', expected one of " + columnsByField.keySet());
+            }
+        }
+        Map<String, String> selected = new LinkedHashMap<>();
+        columnsByField.forEach((field, column) -> {
+            if ("id".equals(field) || requested.contains(field)) {
+                selected.put(field, column);
+            }
+        });
+        return new Projection(selected);
+    }
+
+    String selectList() {
+        return selectList;
+    }
+
+    RowMapper<Map<String, Object>> rowMapper() {
+        String[] fields = columnsByField.keySet().toArray(String[]::new);
+        return (rs, rowNum) -> {
+            Map<String, Object> row = new LinkedHashMap<>(fields.length * 2);
+            for (int i = 0; i < fields.length; i++) {
+                row.put(fields[i], rs.getObject(i + 1));
+            }
+            return row;
+        };
+    }
+
+    static Integer id(Map<String, Object> row) {
+        return (Integer) row.get("id");
+    }
+
+    private static Map<String, String> columns(String... fieldsAndColumns) {
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (int i = 0; i < fieldsAndColumns.length; i += 2) {
+            columns.put(fieldsAndColumns[i], fieldsAndColumns[i + 1]);
+        }
+        return columns;
+    }
+}
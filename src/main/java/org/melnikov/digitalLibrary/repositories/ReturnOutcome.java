@@ -0,0 +1,16 @@
+package org.melnikov.digitalLibrary.repositories;
+
+/**
+ * What {@link BooksRepository#returnBook} found when it tried to take a book back.
+ *
+ * @author Nikolay Melnikov
+ */
+public enum ReturnOutcome {
+    /** The expected patron had the book and it is now free. */
+    RETURNED,
+    /** The book was already free; nothing changed. */
+    NOT_ON_LOAN,
+    /** Someone other than the expected patron has the book; nothing changed. */
+    HELD_BY_OTHER,
+    NOT_FOUND
+}
@@ -0,0 +1,183 @@
+package org.melnikov.digitalLibrary.server;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardWrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.http11.Http11Nio2Protocol;
+import org.apache.coyote.http11.Http11NioProtocol;
+import org.apache.coyote.http2.Http2Protocol;
+import org.melnikov.digitalLibrary.config.MySpringMvcServletInitializer;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.web.SpringServletContainerInitializer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs the application in an embedded Tomcat, as an alternative to deploying the WAR: {@code mvn -Pstartup package}
+ * lays out {@code target/startup}, started there with {@code java -jar lib/spring-mvc-app1-classes.jar}.
+ * <p>
+ * The connector is configured from the {@code server.*} keys of the same settings {@code SpringConfig} reads, which
+ * system properties and environment variables override like everywhere else. {@link #shutdown()}, also run on
+ * SIGTERM, stops accepting connections, waits up to {@code server.shutdown_grace_ms} for in-flight requests,
+ * including those dispatched to virtual threads, and only then stops Tomcat and with it the Spring context.
+ *
+ * @author Nikolay Melnikov
+ */
+public final class EmbeddedServer {
+
+    private static final Logger log = Logger.getLogger(EmbeddedServer.class.getName());
+
+    private final Tomcat tomcat;
+    private final Context context;
+    private final long shutdownGraceMillis;
+
+    private EmbeddedServer(Tomcat tomcat, Context context, long shutdownGraceMillis) {
+        this.tomcat = tomcat;
+        this.context = context;
+        this.shutdownGraceMillis = shutdownGraceMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        EmbeddedServer server = start(settings());
+        Runtime.getRuntime().addShutdownHook(Thread.ofPlatform().name("graceful-shutdown").unstarted(server::shutdown));
+        log.info("Listening on port " + server.port());
+        server.tomcat.getServer().await();
+    }
+
+    /**
+     * System properties and environment variables over the file at {@code settings.file}, a resource location such as
+     * {@code file:/run/config/database.properties}, or else {@code classpath:database.properties} if there is one,
+     * over the defaults of {@code database.properties.origin}.
+     */
+    public static PropertyResolver settings() throws IOException {
+        StandardEnvironment environment = new StandardEnvironment();
+        MutablePropertySources sources = environment.getPropertySources();
+        Resource file = new DefaultResourceLoader().getResource(
+                environment.getProperty("settings.file", "classpath:database.properties"));
+        if (file.exists()) {
+            sources.addLast(new ResourcePropertySource(file));
+        } else if (environment.containsProperty("settings.file")) {
+            throw new FileNotFoundException("settings.file " + file + " does not exist");
+        }
+        sources.addLast(new ResourcePropertySource("classpath:database.properties.origin"));
+        return environment;
+    }
+
+    public static EmbeddedServer start(PropertyResolver settings) throws IOException, LifecycleException {
+        File webapp = new File(settings.getProperty("server.webapp_dir", "webapp")).getAbsoluteFile();
+        if (!new File(webapp, "WEB-INF").isDirectory()) {
+            throw new IllegalStateException(webapp + " is not a web application directory, set server.webapp_dir");
+        }
+
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat").toString());
+        tomcat.setConnector(connector(settings));
+        Context context = tomcat.addContext("", webapp.getPath());
+        context.addServletContainerInitializer(new SpringServletContainerInitializer(),
+                Set.of(MySpringMvcServletInitializer.class));
+        ((StandardContext) context).setFailCtxIfServletStartFails(true);
+        tomcat.start();
+        if (!context.getState().isAvailable()) {
+            tomcat.stop();
+            tomcat.destroy();
+            throw new IllegalStateException("The application failed to start, see the log above");
+        }
+        return new EmbeddedServer(tomcat, context, settings.getProperty("server.shutdown_grace_ms", Long.class, 30_000L));
+    }
+
+    /**
+     * Port actually bound, for {@code server.port=0}.
+     */
+    public int port() {
+        return tomcat.getConnector().getLocalPort();
+    }
+
+    /**
+     * Stops taking new connections and requests, drains the ones in flight, then stops the server.
+     * Safe to call more than once.
+     */
+    public synchronized void shutdown() {
+        if (tomcat.getServer().getState().isAvailable()) {
+            Connector connector = tomcat.getConnector();
+            connector.pause();
+            ((AbstractProtocol<?>) connector.getProtocolHandler()).closeServerSocketGraceful();
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownGraceMillis);
+            while (isActive() && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (isActive()) {
+                log.warning("Requests still in flight after " + shutdownGraceMillis + " ms, stopping anyway");
+            }
+        }
+        try {
+            tomcat.stop();
+            tomcat.destroy();
+        } catch (LifecycleException e) {
+            log.warning("Tomcat did not stop cleanly: " + e);
+        }
+    }
+
+    /**
+     * Async requests cover handlers running on virtual threads; allocated servlets the ones on connector threads.
+     */
+    private boolean isActive() {
+        if (((StandardContext) context).getInProgressAsyncCount() > 0) {
+            return true;
+        }
+        for (Container wrapper : context.findChildren()) {
+            if (((StandardWrapper) wrapper).getCountAllocated() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Connector connector(PropertyResolver settings) {
+        String protocol = settings.getProperty("server.connector.protocol", "nio");
+        Connector connector = new Connector(switch (protocol) {
+            case "nio" -> Http11NioProtocol.class.getName();
+            case "nio2" -> Http11Nio2Protocol.class.getName();
+            default -> throw new IllegalArgumentException("server.connector.protocol must be nio or nio2, not " + protocol);
+        });
+        connector.setPort(settings.getProperty("server.port", Integer.class, 8080));
+        connector.setProperty("maxThreads", settings.getProperty("server.connector.max_threads", "200"));
+        connector.setProperty("minSpareThreads", settings.getProperty("server.connector.min_spare_threads", "10"));
+        connector.setProperty("acceptCount", settings.getProperty("server.connector.accept_count", "100"));
+        connector.setProperty("maxConnections", settings.getProperty("server.connector.max_connections", "8192"));
+        connector.setProperty("connectionTimeout", settings.getProperty("server.connector.connection_timeout_ms", "20000"));
+        connector.setProperty("keepAliveTimeout", settings.getProperty("server.connector.keep_alive_timeout_ms", "20000"));
+        connector.setProperty("maxKeepAliveRequests", settings.getProperty("server.connector.max_keep_alive_requests", "100"));
+        // /api bodies are already compressed by the application and carry Content-Encoding, which Tomcat leaves alone
+        connector.setProperty("compression", settings.getProperty("server.connector.compression", "off"));
+        connector.setProperty("compressionMinSize", settings.getProperty("server.connector.compression_min_size", "2048"));
+        connector.setProperty("compressibleMimeType", settings.getProperty("server.connector.compressible_mime_types",
+                "text/html,text/css,text/javascript,text/plain"));
+        if (settings.getProperty("server.connector.http2", Boolean.class, false)) {
+            // h2c: HTTP/2 by upgrade or prior knowledge on the cleartext port; TLS is left to the proxy in front
+            connector.addUpgradeProtocol(new Http2Protocol());
+        }
+        return connector;
+    }
+}
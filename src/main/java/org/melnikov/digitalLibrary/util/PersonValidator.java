@@ -30,7 +30,7 @@ public class PersonValidator implements Validator {
     public void validate(Object target, Errors errors) {
         Person person = (Person) target;
 
-        if (personRepository.findByName(person.getFullName()).isPresent()) {
+        if (personRepository.existsByName(person.getFullName())) {
             errors.rejectValue("fullName", "error.person.exists", "Person with this name already exists");
         }
 
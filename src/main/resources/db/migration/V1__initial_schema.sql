@@ -0,0 +1,24 @@
+-- Schema of init_data/dump_2023-02-22_javarush.sql, for databases created from scratch.
+-- Databases restored from the dump are baselined at this version and skip it.
+
+CREATE TABLE IF NOT EXISTS book
+(
+    id                  integer GENERATED BY DEFAULT AS IDENTITY,
+    title               character varying,
+    author              character varying,
+    year_of_publication integer,
+    person_id           integer,
+    CONSTRAINT book_pk PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS person
+(
+    id            integer GENERATED BY DEFAULT AS IDENTITY,
+    full_name     character varying(200) NOT NULL,
+    year_of_birth integer,
+    CONSTRAINT person_pk PRIMARY KEY (id),
+    CONSTRAINT person_pk2 UNIQUE (full_name)
+);
+
+ALTER TABLE book
+    ADD CONSTRAINT book_person_id_fk FOREIGN KEY (person_id) REFERENCES person (id);
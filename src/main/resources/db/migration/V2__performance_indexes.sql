@@ -0,0 +1,31 @@
+-- PersonRepository.getBooksByPersonId, BooksRepository.getOwner and the FK check on person delete
+CREATE INDEX IF NOT EXISTS book_person_id_idx ON book (person_id);
+
+-- keyset pagination of /books sorted by title or author
+CREATE INDEX IF NOT EXISTS book_title_id_idx ON book (title, id);
+CREATE INDEX IF NOT EXISTS book_author_id_idx ON book (author, id);
+
+-- substring (LIKE '%...%' / ILIKE) search on title and author
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS book_title_trgm_idx ON book USING gin (title gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS book_author_trgm_idx ON book USING gin (author gin_trgm_ops);
+
+-- PersonRepository.searchByNamePrefix (LIKE 'prefix%' regardless of the database collation)
+CREATE INDEX IF NOT EXISTS person_full_name_pattern_idx ON person (full_name text_pattern_ops);
+
+-- PersonRepository.findByName / PersonValidator: unique full_name, created unless the dump already has it
+DO
+$$
+    BEGIN
+        IF NOT EXISTS(SELECT 1
+                      FROM pg_constraint c
+                               JOIN pg_attribute a ON a.attrelid = c.conrelid AND a.attnum = ANY (c.conkey)
+                      WHERE c.conrelid = 'person'::regclass
+                        AND c.contype = 'u'
+                        AND array_length(c.conkey, 1) = 1
+                        AND a.attname = 'full_name') THEN
+            ALTER TABLE person
+                ADD CONSTRAINT person_full_name_key UNIQUE (full_name);
+        END IF;
+    END
+$$;
@@ -0,0 +1,8 @@
+-- Full-text representation of a book for /books/search, kept current by PostgreSQL on every
+-- INSERT/UPDATE (including COPY imports). Title matches rank above author matches.
+ALTER TABLE book
+    ADD COLUMN IF NOT EXISTS search_vector tsvector
+        GENERATED ALWAYS AS (setweight(to_tsvector('simple', coalesce(title, '')), 'A') ||
+                             setweight(to_tsvector('simple', coalesce(author, '')), 'B')) STORED;
+
+CREATE INDEX IF NOT EXISTS book_search_vector_idx ON book USING gin (search_vector);
@@ -0,0 +1,46 @@
+-- Per-row version and modification time, bumped by the repositories' UPDATE statements,
+-- plus one version row per table, bumped by a statement-level trigger on every write
+-- (including bulk imports and TRUNCATE). They back the ETag / Last-Modified headers.
+
+ALTER TABLE book
+    ADD COLUMN IF NOT EXISTS version    bigint      NOT NULL DEFAULT 1,
+    ADD COLUMN IF NOT EXISTS updated_at timestamptz NOT NULL DEFAULT now();
+
+ALTER TABLE person
+    ADD COLUMN IF NOT EXISTS version    bigint      NOT NULL DEFAULT 1,
+    ADD COLUMN IF NOT EXISTS updated_at timestamptz NOT NULL DEFAULT now();
+
+CREATE TABLE IF NOT EXISTS table_version
+(
+    table_name text PRIMARY KEY,
+    version    bigint      NOT NULL,
+    updated_at timestamptz NOT NULL
+);
+
+INSERT INTO table_version (table_name, version, updated_at)
+VALUES ('book', 1, now()),
+       ('person', 1, now())
+ON CONFLICT (table_name) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION bump_table_version() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    UPDATE table_version SET version = version + 1, updated_at = now() WHERE table_name = TG_TABLE_NAME;
+    RETURN NULL;
+END
+$$;
+
+DROP TRIGGER IF EXISTS book_table_version ON book;
+CREATE TRIGGER book_table_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE
+    ON book
+    FOR EACH STATEMENT
+EXECUTE FUNCTION bump_table_version();
+
+DROP TRIGGER IF EXISTS person_table_version ON person;
+CREATE TRIGGER person_table_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE
+    ON person
+    FOR EACH STATEMENT
+EXECUTE FUNCTION bump_table_version();
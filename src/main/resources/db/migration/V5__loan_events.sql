@@ -0,0 +1,54 @@
+-- Loan history: one row per checkout, return and overdue notice, written in the same statement as the book
+-- change. Append-only and partitioned by month, so old months can be detached or dropped as a whole.
+CREATE TABLE loan_event
+(
+    id          bigint GENERATED ALWAYS AS IDENTITY,
+    book_id     integer     NOT NULL,
+    person_id   integer     NOT NULL,
+    event_type  varchar(16) NOT NULL CHECK (event_type IN ('CHECKOUT', 'RETURN', 'OVERDUE')),
+    due_at      timestamptz,
+    occurred_at timestamptz NOT NULL DEFAULT now(),
+    CONSTRAINT loan_event_pk PRIMARY KEY (id, occurred_at)
+) PARTITION BY RANGE (occurred_at);
+
+CREATE INDEX loan_event_book_idx ON loan_event (book_id, occurred_at);
+CREATE INDEX loan_event_person_idx ON loan_event (person_id, occurred_at);
+
+-- catches rows for a month whose partition was not created in time
+CREATE TABLE loan_event_default PARTITION OF loan_event DEFAULT;
+
+-- monthly partitions from the current month up to months_ahead; OverdueScanner calls this on every run
+CREATE FUNCTION create_loan_event_partitions(months_ahead integer) RETURNS void
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    month_start date;
+BEGIN
+    FOR i IN 0..months_ahead
+        LOOP
+            month_start := (date_trunc('month', now()) + make_interval(months => i))::date;
+            EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF loan_event FOR VALUES FROM (%L) TO (%L)',
+                           'loan_event_' || to_char(month_start, 'YYYY_MM'),
+                           month_start, (month_start + interval '1 month')::date);
+        END LOOP;
+END
+$$;
+
+SELECT create_loan_event_partitions(2);
+
+-- open loans by due date: only lent books are indexed, so the overdue scan reads just the newly overdue ones
+ALTER TABLE book
+    ADD COLUMN due_at timestamptz;
+UPDATE book
+SET due_at = now() + interval '14 days'
+WHERE person_id IS NOT NULL;
+CREATE INDEX book_open_loans_due_idx ON book (due_at) WHERE person_id IS NOT NULL;
+
+-- how far OverdueScanner got: loans due up to this moment have been reported
+CREATE TABLE overdue_scan
+(
+    singleton     boolean PRIMARY KEY DEFAULT true CHECK (singleton),
+    scanned_until timestamptz NOT NULL
+);
+INSERT INTO overdue_scan (scanned_until)
+VALUES (now());
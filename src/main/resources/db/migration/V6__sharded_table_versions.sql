@@ -0,0 +1,76 @@
+-- The single table_version row per table was locked by every write until commit, so all checkouts, returns,
+-- batches and imports ran one at a time. Each table now has 64 slots and a write bumps the slot of its backend,
+-- so concurrent transactions on different connections rarely touch the same row. The table version is the sum
+-- of its slots: every committed bump raises it, whatever order transactions commit in.
+-- Statements that change no rows, such as a rejected conditional checkout, no longer bump anything.
+
+ALTER TABLE table_version
+    ADD COLUMN slot integer NOT NULL DEFAULT 0;
+
+ALTER TABLE table_version
+    DROP CONSTRAINT table_version_pkey,
+    ADD PRIMARY KEY (table_name, slot);
+
+INSERT INTO table_version (table_name, slot, version, updated_at)
+SELECT table_version.table_name, s.n, 0, table_version.updated_at
+FROM table_version,
+     generate_series(1, 63) AS s(n)
+ON CONFLICT (table_name, slot) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION bump_table_version() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    UPDATE table_version
+    SET version    = version + 1,
+        updated_at = now()
+    WHERE table_name = TG_TABLE_NAME
+      AND slot = pg_backend_pid() % 64;
+    RETURN NULL;
+END
+$$;
+
+-- for INSERT, UPDATE and DELETE, whose triggers expose the affected rows as the transition table "changed"
+CREATE FUNCTION bump_table_version_if_changed() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    IF EXISTS (SELECT FROM changed) THEN
+        UPDATE table_version
+        SET version    = version + 1,
+            updated_at = now()
+        WHERE table_name = TG_TABLE_NAME
+          AND slot = pg_backend_pid() % 64;
+    END IF;
+    RETURN NULL;
+END
+$$;
+
+-- transition tables need one trigger per event
+DROP TRIGGER IF EXISTS book_table_version ON book;
+CREATE TRIGGER book_table_version_insert
+    AFTER INSERT ON book REFERENCING NEW TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version_if_changed();
+CREATE TRIGGER book_table_version_update
+    AFTER UPDATE ON book REFERENCING NEW TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version_if_changed();
+CREATE TRIGGER book_table_version_delete
+    AFTER DELETE ON book REFERENCING OLD TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version_if_changed();
+CREATE TRIGGER book_table_version_truncate
+    AFTER TRUNCATE ON book
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version();
+
+DROP TRIGGER IF EXISTS person_table_version ON person;
+CREATE TRIGGER person_table_version_insert
+    AFTER INSERT ON person REFERENCING NEW TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version_if_changed();
+CREATE TRIGGER person_table_version_update
+    AFTER UPDATE ON person REFERENCING NEW TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version_if_changed();
+CREATE TRIGGER person_table_version_delete
+    AFTER DELETE ON person REFERENCING OLD TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version_if_changed();
+CREATE TRIGGER person_table_version_truncate
+    AFTER TRUNCATE ON person
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version();
@@ -0,0 +1,7 @@
+-- Keyset pages sorted by title or author now compare with COLLATE "C" (code point order), which is the order
+-- the in-memory catalog snapshot uses, so both serve the same pages and cursors whatever the database locale.
+-- The indexes have to use the same collation to serve those queries.
+DROP INDEX IF EXISTS book_title_id_idx;
+DROP INDEX IF EXISTS book_author_id_idx;
+CREATE INDEX book_title_id_idx ON book (title COLLATE "C", id);
+CREATE INDEX book_author_id_idx ON book (author COLLATE "C", id);
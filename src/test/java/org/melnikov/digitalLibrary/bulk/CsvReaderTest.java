@@ -0,0 +1,44 @@
+package org.melnikov.digitalLibrary.bulk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Nikolay Melnikov
+ */
+public class CsvReaderTest {
+
+    @Test
+    public void quotedFieldsMaySpanLines() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("title,author\r\n\"Two\nlines\",\"Say \"\"hi\"\"\"\n,\"\"\n"));
+
+        assertEquals(List.of("title", "author"), reader.next());
+        assertEquals(List.of("Two\nlines", "Say \"hi\""), reader.next());
+        assertEquals(2, reader.getRecordLine());
+        assertEquals(Arrays.asList(null, ""), reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void unterminatedQuoteIsBadInputNamingItsLine() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("title,author\nfine,row\n\"never closed,author\n"));
+        reader.next();
+        reader.next();
+
+        try {
+            reader.next();
+            fail("an unterminated quote must be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("line 3"));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.melnikov.digitalLibrary.cache;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A value read before an invalidation must not be cached after it.
+ *
+ * @author Nikolay Melnikov
+ */
+public class EntityCacheTest {
+
+    private final EntityCache<String> cache = new EntityCache<>(100, Duration.ofMinutes(10));
+
+    @Test
+    public void invalidateDuringALoadDropsTheLoadedValue() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        CompletableFuture<Optional<String>> reader = CompletableFuture.supplyAsync(() -> cache.get(1, id -> {
+            loading.countDown();
+            await(written);
+            return Optional.of("before the write");
+        }));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> cache.invalidate(1));
+        Thread.sleep(200);
+        assertFalse("invalidate waits for the load in flight", writer.isDone());
+        written.countDown();
+        writer.get(10, TimeUnit.SECONDS);
+
+        assertEquals(Optional.of("before the write"), reader.get(10, TimeUnit.SECONDS));
+        assertFalse(cache.getIfPresent(1).isPresent());
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Optional<String>> first = CompletableFuture.supplyAsync(() -> cache.get(1, id -> {
+            loading.countDown();
+            await(release);
+            return Optional.of("loaded once");
+        }));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Optional<String>> second = CompletableFuture.supplyAsync(
+                () -> cache.get(1, id -> Optional.of("loaded twice")));
+        release.countDown();
+
+        assertEquals(Optional.of("loaded once"), first.get(10, TimeUnit.SECONDS));
+        assertEquals(Optional.of("loaded once"), second.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void missingEntitiesAreNotCached() {
+        assertFalse(cache.get(1, id -> Optional.empty()).isPresent());
+        assertEquals(Optional.of("found"), cache.get(1, id -> Optional.of("found")));
+    }
+
+    @Test
+    public void putIsDroppedAfterAnInvalidationSinceTheStamp() {
+        long stamp = cache.stamp();
+        cache.invalidate(2);
+
+        cache.putIfNotInvalidatedSince(stamp, 1, "joined before the write");
+        assertFalse(cache.getIfPresent(1).isPresent());
+
+        cache.putIfNotInvalidatedSince(cache.stamp(), 1, "joined after the write");
+        assertEquals(Optional.of("joined after the write"), cache.getIfPresent(1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
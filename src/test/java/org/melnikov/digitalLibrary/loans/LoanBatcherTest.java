@@ -0,0 +1,151 @@
+package org.melnikov.digitalLibrary.loans;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.melnikov.digitalLibrary.cache.EntityCache;
+import org.melnikov.digitalLibrary.repositories.BooksRepository;
+import org.melnikov.digitalLibrary.repositories.CatalogSnapshot;
+import org.melnikov.digitalLibrary.repositories.CheckoutOutcome;
+import org.melnikov.digitalLibrary.repositories.TestDatabase;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Batches against row locks held by another transaction.
+ *
+ * @author Nikolay Melnikov
+ */
+public class LoanBatcherTest {
+
+    @ClassRule
+    public static final TestDatabase database = new TestDatabase();
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(2);
+
+    private BooksRepository repository;
+    private LoanBatcher batcher;
+    private Connection holder;
+
+    @Before
+    public void setUp() throws SQLException {
+        database.clear();
+        database.insertPeople(1);
+        database.insertBooks(3);
+        repository = new BooksRepository(database.jdbcTemplate(), database.jdbcTemplate(),
+                database.transactionManager(), new EntityCache<>(0, Duration.ofMinutes(10)),
+                new EntityCache<>(0, Duration.ofMinutes(10)), new CatalogSnapshot(database.jdbcTemplate(), false, 0));
+        holder = database.jdbcTemplate().getDataSource().getConnection();
+        holder.setAutoCommit(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        holder.rollback();
+        holder.close();
+        batcher.close();
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void batchLocksBooksInIdOrder() throws Exception {
+        batcher = batcher(2, Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(10));
+        lock(1);
+
+        CompletableFuture<CheckoutOutcome> third = CompletableFuture.supplyAsync(() -> batcher.checkout(3, 1), callers);
+        // book 3 arrives first and waits for its batch to fill
+        Thread.sleep(100);
+        CompletableFuture<CheckoutOutcome> first = CompletableFuture.supplyAsync(() -> batcher.checkout(1, 1), callers);
+        awaitLockWaits(1);
+
+        // book 1 comes first, so the batch waits for it before touching book 3; in arrival order 3 would be locked
+        try (Statement statement = holder.createStatement()) {
+            statement.execute("SELECT 1 FROM book WHERE id = 3 FOR UPDATE NOWAIT");
+        }
+        holder.rollback();
+
+        assertEquals(CheckoutOutcome.CHECKED_OUT, third.get(10, TimeUnit.SECONDS));
+        assertEquals(CheckoutOutcome.CHECKED_OUT, first.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void callersStopWaitingForAStuckBatch() throws Exception {
+        batcher = batcher(1, Duration.ofMillis(1), Duration.ofMillis(200), Duration.ofMillis(300));
+        lock(1);
+
+        CompletableFuture<CheckoutOutcome> running = CompletableFuture.supplyAsync(() -> batcher.checkout(1, 1), callers);
+        awaitLockWaits(1);
+        CompletableFuture<CheckoutOutcome> queued = CompletableFuture.supplyAsync(() -> batcher.checkout(2, 1), callers);
+
+        assertFailsWith(LoanOutcomeUnknownException.class, running);
+        assertFailsWith(RejectedExecutionException.class, queued);
+
+        holder.rollback();
+        batcher.close();
+        assertEquals(1, database.jdbcTemplate().queryForObject("SELECT person_id FROM book WHERE id = 1", Integer.class).intValue());
+        assertNull("a withdrawn checkout never runs",
+                database.jdbcTemplate().queryForObject("SELECT person_id FROM book WHERE id = 2", Integer.class));
+    }
+
+    @Test
+    public void aSlowBatchIsWaitedForPastThePickupTimeout() throws Exception {
+        batcher = batcher(1, Duration.ofMillis(1), Duration.ofMillis(200), Duration.ofSeconds(10));
+        lock(1);
+
+        CompletableFuture<CheckoutOutcome> slow = CompletableFuture.supplyAsync(() -> batcher.checkout(1, 1), callers);
+        awaitLockWaits(1);
+        // well past maxDelay + offerTimeout, but the batch is running: its caller must hear how it ended
+        Thread.sleep(600);
+        holder.rollback();
+
+        assertEquals(CheckoutOutcome.CHECKED_OUT, slow.get(10, TimeUnit.SECONDS));
+    }
+
+    private LoanBatcher batcher(int maxBatch, Duration maxDelay, Duration offerTimeout, Duration resultTimeout) {
+        return new LoanBatcher(repository, database.transactionManager(), new SimpleMeterRegistry(), true, 10,
+                maxBatch, maxDelay, offerTimeout, resultTimeout);
+    }
+
+    private void lock(int bookId) throws SQLException {
+        try (Statement statement = holder.createStatement()) {
+            statement.execute("SELECT 1 FROM book WHERE id = " + bookId + " FOR UPDATE");
+        }
+    }
+
+    private static void awaitLockWaits(int expected) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (database.jdbcTemplate().queryForObject("SELECT count(*) FROM pg_stat_activity " +
+                    "WHERE wait_event_type = 'Lock'", Integer.class) == expected) {
+                Thread.sleep(100);
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail("expected " + expected + " statements waiting for a lock");
+    }
+
+    private static void assertFailsWith(Class<? extends Exception> expected, CompletableFuture<?> call) throws Exception {
+        try {
+            call.get(10, TimeUnit.SECONDS);
+            fail("expected " + expected.getSimpleName());
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), expected.isInstance(e.getCause()));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.melnikov.digitalLibrary.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Every query is recorded once, with the rows it read, whatever its result is built into.
+ *
+ * @author Nikolay Melnikov
+ */
+public class InstrumentedJdbcTemplateTest {
+
+    private static final String FIVE_ROWS = "SELECT g FROM generate_series(1, 5) g WHERE g > ?";
+
+    private static EmbeddedPostgres postgres;
+
+    private SimpleMeterRegistry registry;
+    private InstrumentedJdbcTemplate jdbcTemplate;
+
+    @BeforeClass
+    public static void startDatabase() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+    }
+
+    @AfterClass
+    public static void stopDatabase() throws IOException {
+        postgres.close();
+    }
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        jdbcTemplate = new InstrumentedJdbcTemplate(postgres.getPostgresDatabase(), registry);
+    }
+
+    @Test
+    public void rowCallbackQueriesAreRecordedOnce() {
+        AtomicInteger seen = new AtomicInteger();
+
+        jdbcTemplate.query(FIVE_ROWS, rs -> {
+            seen.incrementAndGet();
+        }, 0);
+
+        assertEquals(5, seen.get());
+        assertEquals(1, rows(FIVE_ROWS).count());
+        assertEquals(5, rows(FIVE_ROWS).totalAmount(), 0);
+    }
+
+    @Test
+    public void rowsBuiltIntoAMapAreCounted() {
+        Map<Integer, Boolean> even = jdbcTemplate.query(FIVE_ROWS, rs -> {
+            Map<Integer, Boolean> result = new HashMap<>();
+            while (rs.next()) {
+                result.put(rs.getInt(1), rs.getInt(1) % 2 == 0);
+            }
+            return result;
+        }, 2);
+
+        assertEquals(3, even.size());
+        assertEquals(1, rows(FIVE_ROWS).count());
+        assertEquals(3, rows(FIVE_ROWS).totalAmount(), 0);
+    }
+
+    @Test
+    public void mappedRowsAreCountedOnce() {
+        List<Integer> values = jdbcTemplate.query(FIVE_ROWS, (rs, rowNum) -> rs.getInt(1), 4);
+
+        assertEquals(List.of(5), values);
+        assertEquals(1, rows(FIVE_ROWS).count());
+        assertEquals(1, rows(FIVE_ROWS).totalAmount(), 0);
+    }
+
+    private DistributionSummary rows(String sql) {
+        return registry.get("db.query.rows").tag("query", sql).summary();
+    }
+}
@@ -0,0 +1,145 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.melnikov.digitalLibrary.cache.EntityCache;
+import org.melnikov.digitalLibrary.models.Book;
+import org.springframework.dao.DataAccessException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The id-array operations of {@link BooksRepository}.
+ *
+ * @author Nikolay Melnikov
+ */
+public class BooksRepositoryTest {
+
+    private static final int MANY = 2 * IdArrays.CHUNK_SIZE + 500;
+
+    @ClassRule
+    public static final TestDatabase database = new TestDatabase();
+
+    private BooksRepository repository;
+
+    @Before
+    public void setUp() {
+        database.clear();
+        repository = new BooksRepository(database.jdbcTemplate(), database.jdbcTemplate(),
+                database.transactionManager(), new EntityCache<>(1000, Duration.ofMinutes(10)),
+                new EntityCache<>(1000, Duration.ofMinutes(10)),
+                new CatalogSnapshot(database.jdbcTemplate(), false, 0));
+    }
+
+    @Test
+    public void findAllByIdReturnsEachBookOnceInIdOrder() {
+        database.insertBooks(3);
+
+        List<Book> books = repository.findAllById(List.of(3, 1, 3, 1, 42));
+
+        assertEquals(List.of(1, 3), ids(books));
+    }
+
+    @Test
+    public void emptyIterableFindsAndDeletesNothing() {
+        database.insertBooks(3);
+
+        assertTrue(repository.findAllById(List.of()).isEmpty());
+        repository.deleteAllById(List.of());
+        repository.deleteAll(List.of());
+
+        assertEquals(3, database.count("book"));
+    }
+
+    @Test
+    public void findAllByIdAcrossChunksIsOrderedAsAWhole() {
+        database.insertBooks(MANY);
+        List<Integer> requested = new ArrayList<>();
+        for (int id = MANY; id > 0; id--) {
+            requested.add(id);
+        }
+        Collections.shuffle(requested);
+
+        List<Integer> found = ids(repository.findAllById(requested));
+
+        assertEquals(MANY, found.size());
+        for (int i = 0; i < found.size(); i++) {
+            assertEquals(i + 1, found.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void deleteAllByIdAcrossChunks() {
+        database.insertBooks(MANY + 10);
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= MANY; id++) {
+            ids.add(id);
+            ids.add(id);
+        }
+
+        repository.deleteAllById(ids);
+
+        assertEquals(10, database.count("book"));
+    }
+
+    @Test
+    public void failedChunkRollsBackTheWholeDelete() {
+        database.insertBooks(MANY);
+        database.jdbcTemplate().execute("CREATE FUNCTION refuse_delete() RETURNS trigger LANGUAGE plpgsql AS " +
+                "$$ BEGIN RAISE EXCEPTION 'refused'; END $$");
+        database.jdbcTemplate().execute("CREATE TRIGGER refuse_last_book BEFORE DELETE ON book FOR EACH ROW " +
+                "WHEN (OLD.id = " + MANY + ") EXECUTE FUNCTION refuse_delete()");
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= MANY; id++) {
+            ids.add(id);
+        }
+
+        try {
+            repository.deleteAllById(ids);
+            fail("the last chunk should have failed");
+        } catch (DataAccessException expected) {
+            assertEquals(MANY, database.count("book"));
+        } finally {
+            database.jdbcTemplate().execute("DROP TRIGGER refuse_last_book ON book");
+            database.jdbcTemplate().execute("DROP FUNCTION refuse_delete()");
+        }
+    }
+
+    @Test
+    public void deleteAllDeletesTheBooksNotThePeopleWithTheSameIds() {
+        database.insertPeople(3);
+        database.insertBooks(3);
+
+        repository.deleteAll(repository.findAllById(List.of(1, 2)));
+
+        assertEquals(List.of(3), ids(repository.findAllById(List.of(1, 2, 3))));
+        assertEquals(3, database.count("person"));
+    }
+
+    @Test
+    public void checkoutToAnUnknownPatronChangesNothing() {
+        database.insertPeople(1);
+        database.insertBooks(3);
+        repository.checkout(2, 1);
+
+        assertEquals(CheckoutOutcome.NO_SUCH_PATRON, repository.checkout(1, 42));
+        assertEquals(Map.of(1, CheckoutOutcome.NO_SUCH_PATRON, 2, CheckoutOutcome.HELD_BY_OTHER,
+                4, CheckoutOutcome.NOT_FOUND), repository.checkoutAll(List.of(1, 2, 4), 42));
+        assertEquals(1, database.count("loan_event"));
+        assertEquals(1, database.jdbcTemplate().queryForObject("SELECT count(*) FROM book WHERE person_id IS NOT NULL",
+                Integer.class).intValue());
+    }
+
+    private static List<Integer> ids(List<Book> books) {
+        return books.stream().map(Book::getId).toList();
+    }
+}
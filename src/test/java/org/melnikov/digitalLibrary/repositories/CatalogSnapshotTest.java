@@ -0,0 +1,157 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.melnikov.digitalLibrary.cache.EntityCache;
+import org.melnikov.digitalLibrary.models.Book;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The snapshot must serve the same pages and cursors as the SQL keyset queries, for every order.
+ *
+ * @author Nikolay Melnikov
+ */
+public class CatalogSnapshotTest {
+
+    // case, accents, Cyrillic Ё (U+0401, before А), punctuation, private use and a character above U+FFFF
+    private static final List<String> TITLES = List.of("apple", "Apple", "Äpfel", "Zebra", "zebra", "Ёлка",
+            "Елка", "Ангел", "ёж", "\"Quoted\"", "-dash", "émigré", "Emigre", "\uD83D\uDCD6 Book",
+            "\uE000 mark", "Apple", "apple pie", "123", "Ω");
+
+    @ClassRule
+    public static final TestDatabase database = new TestDatabase();
+
+    private BooksRepository repository;
+    private CatalogSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        database.clear();
+        for (int i = 0; i < TITLES.size(); i++) {
+            database.jdbcTemplate().update("INSERT INTO book (title, author, year_of_publication) VALUES (?, ?, 2000)",
+                    TITLES.get(i), TITLES.get(TITLES.size() - 1 - i));
+        }
+        repository = new BooksRepository(database.jdbcTemplate(), database.jdbcTemplate(),
+                database.transactionManager(), new EntityCache<>(0, Duration.ofMinutes(10)),
+                new EntityCache<>(0, Duration.ofMinutes(10)), new CatalogSnapshot(database.jdbcTemplate(), false, 0));
+        snapshot = new CatalogSnapshot(database.jdbcTemplate(), true, 1000);
+        snapshot.reload();
+    }
+
+    @Test
+    public void pagesMatchTheDatabaseForEveryOrder() {
+        for (BookSort sort : BookSort.values()) {
+            List<Integer> fromDatabase = walk((after, before) -> repository.findPage(after, before, 3, sort));
+            List<Integer> fromSnapshot = walk((after, before) -> snapshot.findPage(after, before, 3, sort).orElseThrow());
+
+            assertEquals(sort.name(), TITLES.size(), fromDatabase.size());
+            assertEquals(sort.name(), fromDatabase, fromSnapshot);
+        }
+    }
+
+    @Test
+    public void cursorsOfOnePathWorkOnTheOther() {
+        for (BookSort sort : BookSort.values()) {
+            KeysetPage<Book> first = repository.findPage(null, null, 4, sort);
+            KeysetPage<Book> next = snapshot.findPage(first.lastId(), null, 4, sort).orElseThrow();
+            KeysetPage<Book> back = repository.findPage(null, next.firstId(), 4, sort);
+
+            assertEquals(sort.name(), ids(repository.findPage(first.lastId(), null, 4, sort)), ids(next));
+            assertEquals(sort.name(), ids(first), ids(back));
+        }
+    }
+
+    @Test
+    public void writesKeepEveryOrderInStepWithoutAReload() {
+        Random random = new Random(42);
+        List<Integer> live = new ArrayList<>();
+        for (int id = 1; id <= TITLES.size(); id++) {
+            live.add(id);
+        }
+        for (int step = 1; step <= 150; step++) {
+            Book book = new Book();
+            book.setTitle(TITLES.get(random.nextInt(TITLES.size())));
+            book.setAuthor(TITLES.get(random.nextInt(TITLES.size())));
+            book.setYearOfPublication(2000);
+            int write = live.size() < 5 ? 0 : random.nextInt(3);
+            if (write == 0) {
+                repository.save(book);
+                snapshot.putAll(List.of(book));
+                live.add(book.getId());
+            } else if (write == 1) {
+                int id = live.get(random.nextInt(live.size()));
+                repository.update(id, book);
+                snapshot.put(id, book.getTitle(), book.getAuthor(), book.getYearOfPublication());
+            } else {
+                Integer id = live.remove(random.nextInt(live.size()));
+                repository.deleteById(id);
+                snapshot.remove(id);
+            }
+            if (step % 10 == 0) {
+                for (BookSort sort : BookSort.values()) {
+                    assertEquals(sort + " after step " + step,
+                            walk((after, before) -> repository.findPage(after, before, 4, sort)),
+                            walk((after, before) -> snapshot.findPage(after, before, 4, sort).orElseThrow()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void authorsNoBookNamesAreDropped() {
+        Set<String> authors = new HashSet<>(Set.of("Ghost writer"));
+        for (int id = 1; id <= TITLES.size(); id++) {
+            if (id <= 5) {
+                snapshot.put(id, "Renamed " + id, "Ghost writer " + id, 2000);
+                snapshot.put(id, "Renamed " + id, "Ghost writer", 2000);
+            } else if (id == 6) {
+                snapshot.remove(id);
+            } else {
+                authors.add(TITLES.get(TITLES.size() - id));
+            }
+        }
+
+        assertEquals(authors.size(), snapshot.authorCount());
+    }
+
+    @Test
+    public void codePointOrderIsNotUtf16Order() {
+        String supplementary = "\uD83D\uDCD6";
+        String privateUse = "\uE000";
+
+        assertTrue(supplementary.compareTo(privateUse) < 0);
+        assertTrue(CatalogSnapshot.compareCodePoints(supplementary, privateUse) > 0);
+        assertTrue(CatalogSnapshot.compareCodePoints("Apple", "apple") < 0);
+        assertTrue(CatalogSnapshot.compareCodePoints("app", "apple") < 0);
+        assertEquals(0, CatalogSnapshot.compareCodePoints("Ёлка", "Ёлка"));
+    }
+
+    /**
+     * All ids in page order, following the next-page cursors from the first page.
+     */
+    private static List<Integer> walk(BiFunction<Integer, Integer, KeysetPage<Book>> pager) {
+        List<Integer> ids = new ArrayList<>();
+        KeysetPage<Book> page = pager.apply(null, null);
+        ids.addAll(ids(page));
+        while (page.hasNext()) {
+            page = pager.apply(page.lastId(), null);
+            ids.addAll(ids(page));
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(KeysetPage<Book> page) {
+        return page.content().stream().map(Book::getId).toList();
+    }
+}
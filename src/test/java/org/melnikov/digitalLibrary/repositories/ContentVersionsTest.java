@@ -0,0 +1,78 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.melnikov.digitalLibrary.cache.EntityCache;
+import org.melnikov.digitalLibrary.models.Book;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * A person's version follows their own loans and held books, not every loan in the library.
+ *
+ * @author Nikolay Melnikov
+ */
+public class ContentVersionsTest {
+
+    @ClassRule
+    public static final TestDatabase database = new TestDatabase();
+
+    private BooksRepository repository;
+    private ContentVersions versions;
+
+    @Before
+    public void setUp() {
+        database.clear();
+        database.insertPeople(2);
+        database.insertBooks(3);
+        repository = new BooksRepository(database.jdbcTemplate(), database.jdbcTemplate(),
+                database.transactionManager(), new EntityCache<>(0, Duration.ofMinutes(10)),
+                new EntityCache<>(0, Duration.ofMinutes(10)), new CatalogSnapshot(database.jdbcTemplate(), false, 0));
+        versions = new ContentVersions(database.jdbcTemplate());
+    }
+
+    @Test
+    public void otherPatronsLoansLeaveThePersonAlone() {
+        repository.checkout(1, 1);
+        String before = tag(1);
+
+        repository.checkout(2, 2);
+        repository.returnBook(2, 2);
+        repository.update(3, book("Not held by anyone"));
+
+        assertEquals(before, tag(1));
+    }
+
+    @Test
+    public void ownLoansAndHeldBooksChangeThePerson() {
+        String initial = tag(1);
+        repository.checkout(1, 1);
+        String holding = tag(1);
+        repository.update(1, book("Retitled while lent"));
+        String retitled = tag(1);
+        repository.returnBook(1, 1);
+        repository.checkout(2, 1);
+        String swapped = tag(1);
+
+        assertNotEquals(initial, holding);
+        assertNotEquals(holding, retitled);
+        assertNotEquals(retitled, swapped);
+        assertNotEquals(holding, swapped);
+    }
+
+    private String tag(int personId) {
+        return versions.person(personId).orElseThrow().tag();
+    }
+
+    private static Book book(String title) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setAuthor("Author");
+        book.setYearOfPublication(2000);
+        return book;
+    }
+}
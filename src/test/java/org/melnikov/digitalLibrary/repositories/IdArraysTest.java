@@ -0,0 +1,53 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Nikolay Melnikov
+ */
+public class IdArraysTest {
+
+    @Test
+    public void chunksDropDuplicatesAndNullsAndSort() {
+        List<Integer[]> chunks = IdArrays.chunks(Arrays.asList(5, 3, 5, null, 1, 3));
+
+        assertEquals(1, chunks.size());
+        assertArrayEquals(new Integer[]{1, 3, 5}, chunks.get(0));
+    }
+
+    @Test
+    public void noIdsMeansNoChunks() {
+        assertTrue(IdArrays.chunks(List.of()).isEmpty());
+    }
+
+    @Test
+    public void chunksSplitAtChunkSizeInIdOrder() {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 2 * IdArrays.CHUNK_SIZE + 500; id > 0; id--) {
+            ids.add(id);
+            ids.add(id);
+        }
+
+        List<Integer[]> chunks = IdArrays.chunks(ids);
+
+        assertEquals(3, chunks.size());
+        assertEquals(IdArrays.CHUNK_SIZE, chunks.get(0).length);
+        assertEquals(IdArrays.CHUNK_SIZE, chunks.get(1).length);
+        assertEquals(500, chunks.get(2).length);
+        int previous = 0;
+        for (Integer[] chunk : chunks) {
+            for (Integer id : chunk) {
+                assertEquals(previous + 1, id.intValue());
+                previous = id;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.melnikov.digitalLibrary.cache.EntityCache;
+import org.melnikov.digitalLibrary.models.Person;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The id-array operations of {@link PersonRepository}.
+ *
+ * @author Nikolay Melnikov
+ */
+public class PersonRepositoryTest {
+
+    private static final int MANY = 2 * IdArrays.CHUNK_SIZE + 500;
+
+    @ClassRule
+    public static final TestDatabase database = new TestDatabase();
+
+    private PersonRepository repository;
+
+    @Before
+    public void setUp() {
+        database.clear();
+        PersonNameFilter nameFilter = new PersonNameFilter(database.jdbcTemplate(), false, 0.01);
+        repository = new PersonRepository(database.jdbcTemplate(), database.jdbcTemplate(),
+                database.transactionManager(), new EntityCache<>(1000, Duration.ofMinutes(10)), nameFilter);
+    }
+
+    @Test
+    public void findAllByIdReturnsEachPersonOnceInIdOrder() {
+        database.insertPeople(3);
+
+        List<Person> people = repository.findAllById(List.of(2, 1, 2, 1, 42));
+
+        assertEquals(List.of(1, 2), ids(people));
+    }
+
+    @Test
+    public void emptyIterableFindsAndDeletesNothing() {
+        database.insertPeople(3);
+
+        assertTrue(repository.findAllById(List.of()).isEmpty());
+        repository.deleteAllById(List.of());
+        repository.deleteAll(List.of());
+
+        assertEquals(3, database.count("person"));
+    }
+
+    @Test
+    public void deleteAllByIdAcrossChunks() {
+        database.insertPeople(MANY + 10);
+        List<Integer> ids = new ArrayList<>();
+        for (int id = MANY; id > 0; id--) {
+            ids.add(id);
+            ids.add(id);
+        }
+
+        repository.deleteAllById(ids);
+
+        assertEquals(10, database.count("person"));
+        assertEquals(MANY + 1, database.jdbcTemplate().queryForObject("SELECT min(id) FROM person", Integer.class).intValue());
+    }
+
+    @Test
+    public void failedChunkRollsBackTheWholeDelete() {
+        database.insertPeople(MANY);
+        database.insertBooks(1);
+        // a patron holding a book cannot be deleted; this one is in the last chunk
+        database.jdbcTemplate().update("UPDATE book SET person_id = ? WHERE id = 1", MANY);
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= MANY; id++) {
+            ids.add(id);
+        }
+
+        try {
+            repository.deleteAllById(ids);
+            fail("the last chunk should have failed");
+        } catch (DataIntegrityViolationException expected) {
+            assertEquals(MANY, database.count("person"));
+        }
+    }
+
+    @Test
+    public void deleteAllDeletesThePeopleNotTheBooksWithTheSameIds() {
+        database.insertPeople(3);
+        database.insertBooks(3);
+
+        repository.deleteAll(repository.findAllById(List.of(1, 3)));
+
+        assertEquals(List.of(2), ids(repository.findAllById(List.of(1, 2, 3))));
+        assertEquals(3, database.count("book"));
+    }
+
+    private static List<Integer> ids(List<Person> people) {
+        return people.stream().map(Person::getId).toList();
+    }
+}
@@ -0,0 +1,82 @@
+package org.melnikov.digitalLibrary.repositories;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.rules.ExternalResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+
+/**
+ * Embedded PostgreSQL with an {@code en-US} collated database migrated with the application's Flyway scripts,
+ * for use as a {@code @ClassRule}.
+ * {@link #clear()} empties the tables between tests.
+ *
+ * @author Nikolay Melnikov
+ */
+public final class TestDatabase extends ExternalResource {
+
+    private EmbeddedPostgres postgres;
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+
+    @Override
+    protected void before() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        // collated like the en_US.utf8 database of docker-compose, not by the C locale initdb defaults to here
+        new JdbcTemplate(postgres.getPostgresDatabase()).execute("CREATE DATABASE library TEMPLATE template0 " +
+                "ENCODING 'UTF8' LOCALE 'C' LOCALE_PROVIDER icu ICU_LOCALE 'en-US'");
+        // one instance for both, so that the template joins the manager's transactions
+        DataSource dataSource = postgres.getDatabase("postgres", "library");
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    @Override
+    protected void after() {
+        try {
+            postgres.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public DataSourceTransactionManager transactionManager() {
+        return transactionManager;
+    }
+
+    public void clear() {
+        jdbcTemplate.execute("TRUNCATE book, person, loan_event RESTART IDENTITY");
+    }
+
+    /**
+     * Ids 1 to {@code count}, in a fresh table.
+     */
+    public void insertPeople(int count) {
+        jdbcTemplate.update("INSERT INTO person (full_name, year_of_birth) " +
+                "SELECT 'Patron ' || lpad(g::text, 7, '0'), 1950 FROM generate_series(1, ?) g", count);
+    }
+
+    /**
+     * Ids 1 to {@code count}, in a fresh table, none on loan.
+     */
+    public void insertBooks(int count) {
+        jdbcTemplate.update("INSERT INTO book (title, author, year_of_publication) " +
+                "SELECT 'Title ' || g, 'Author ' || g, 2000 FROM generate_series(1, ?) g", count);
+    }
+
+    public int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Integer.class);
+    }
+}